@@ -0,0 +1,509 @@
+package me.aleksi.grocify;
+
+import me.aleksi.jayson.JSONParseException;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent index of every list file in a directory, used for spending analytics.
+ *
+ * <p>The first scan reads every list file in the directory. Later scans only read files whose modification time or
+ * size has changed, and files are read in parallel. A list's date is its file's modification time.</p>
+ *
+ * <p>Only each list's total and per-item sums are kept, not its rows. When lists change, only the statistics of
+ * items in them are recomputed.</p>
+ *
+ * <p>Scanning and loading are safe to call from any thread. The report is computed once per scan, so getting it is
+ * cheap.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class AnalyticsIndex {
+    private static final int MAGIC = 0x47524F41; // "GROA"
+    private static final int VERSION = 3;
+    private static final Comparator<ListSummary> DATE_ORDER =
+        Comparator.comparingLong((ListSummary s) -> s.lastModified).thenComparing(s -> s.file);
+
+    private final Path path;
+    private volatile Map<Path, ListSummary> lists = Map.of();
+    private Map<String, ItemStats> stats = Map.of();
+    private volatile Report report = new Report(List.of(), List.of());
+
+    /**
+     * Create a new empty index stored in given file.
+     *
+     * @param path file to store index in
+     */
+    public AnalyticsIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Load index from file. A missing file is not an error.
+     *
+     * @throws IOException if file cannot be read or is not a valid index
+     */
+    public synchronized void load() throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a valid analytics index");
+            }
+
+            var count = in.readInt();
+            var loaded = new HashMap<Path, ListSummary>(count * 2);
+            for (var i = 0; i < count; i++) {
+                var file = Path.of(SessionSnapshot.readString(in));
+                var lastModified = in.readLong();
+                var size = in.readLong();
+                BigDecimal total = null;
+                List<ItemEntry> items = null;
+                var itemCount = in.readInt();
+                if (itemCount >= 0) {
+                    total = new BigDecimal(SessionSnapshot.readString(in));
+                    items = new ArrayList<>(itemCount);
+                    for (var j = 0; j < itemCount; j++) {
+                        var name = SessionSnapshot.readString(in);
+                        var amountSum = in.readLong();
+                        var rowCount = in.readInt();
+                        var price = in.readBoolean() ? new BigDecimal(SessionSnapshot.readString(in)) : null;
+                        items.add(new ItemEntry(name, amountSum, rowCount, price));
+                    }
+                }
+                loaded.put(file, new ListSummary(file, lastModified, size, total, items));
+            }
+            update(loaded);
+        } catch (NoSuchFileException e) {
+            // Nothing indexed yet
+        }
+    }
+
+    /**
+     * Save index to file, replacing the previous one only once the new one is completely written.
+     *
+     * @throws IOException if file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(path.getParent());
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        var current = lists;
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(current.size());
+            for (var list : current.values()) {
+                SessionSnapshot.writeString(out, list.file.toString());
+                out.writeLong(list.lastModified);
+                out.writeLong(list.size);
+                if (list.items == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(list.items.size());
+                SessionSnapshot.writeString(out, list.total.toString());
+                for (var item : list.items) {
+                    SessionSnapshot.writeString(out, item.name);
+                    out.writeLong(item.amountSum);
+                    out.writeInt(item.rowCount);
+                    out.writeBoolean(item.price != null);
+                    if (item.price != null) {
+                        SessionSnapshot.writeString(out, item.price.toString());
+                    }
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Bring index up to date with list files in given directory, and save it if anything changed.
+     *
+     * <p>Lists from files that no longer exist, or from other directories, are dropped from the index.</p>
+     *
+     * @param directory directory of list files
+     * @return number of files that had to be read
+     * @throws IOException if directory cannot be listed or index cannot be saved
+     */
+    public synchronized int scan(Path directory) throws IOException {
+        List<Path> files;
+        try (var stream = Files.list(directory)) {
+            files = stream
+                .filter(p -> JsonListFormat.isListFile(p.getFileName().toString()) && Files.isRegularFile(p))
+                .map(Path::toAbsolutePath)
+                .collect(Collectors.toList());
+        }
+
+        var old = lists;
+        var scanned = files.parallelStream()
+            .map(file -> summarize(file, old.get(file)))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toMap(s -> s.file, s -> s));
+
+        var read = 0;
+        for (var summary : scanned.values()) {
+            if (old.get(summary.file) != summary) {
+                read++;
+            }
+        }
+        if (read == 0 && scanned.size() == old.size()) {
+            return 0;
+        }
+
+        update(scanned);
+        save();
+        return read;
+    }
+
+    /**
+     * Replace indexed lists, recomputing statistics of items in lists that were added, changed or removed.
+     */
+    private void update(Map<Path, ListSummary> updated) {
+        var old = lists;
+        var removed = new ArrayList<ListSummary>();
+        var added = new ArrayList<ListSummary>();
+        for (var summary : old.values()) {
+            if (updated.get(summary.file) != summary && summary.items != null) {
+                removed.add(summary);
+            }
+        }
+        for (var summary : updated.values()) {
+            if (old.get(summary.file) != summary && summary.items != null) {
+                added.add(summary);
+            }
+        }
+
+        // Lists each changed item is in, copied from its current statistics
+        var changed = new HashMap<String, TreeMap<ListSummary, ItemEntry>>();
+        for (var summary : removed) {
+            for (var item : summary.items) {
+                changed.computeIfAbsent(item.getKey(), this::copyEntries).remove(summary);
+            }
+        }
+        for (var summary : added) {
+            for (var item : summary.items) {
+                changed.computeIfAbsent(item.getKey(), this::copyEntries).put(summary, item);
+            }
+        }
+
+        var newStats = new HashMap<>(stats);
+        changed.forEach((key, entries) -> {
+            if (entries.isEmpty()) {
+                newStats.remove(key);
+            } else {
+                newStats.put(key, new ItemStats(entries));
+            }
+        });
+
+        var spending = updated.values().stream()
+            .filter(s -> s.items != null)
+            .sorted(DATE_ORDER)
+            .map(s -> new ListSpending(s.file, Instant.ofEpochMilli(s.lastModified), s.total))
+            .collect(Collectors.toList());
+        var items = new ArrayList<>(newStats.values());
+        items.sort(Comparator.comparingInt(ItemStats::getListCount).reversed()
+            .thenComparing(ItemStats::getName, String.CASE_INSENSITIVE_ORDER));
+
+        lists = updated;
+        stats = newStats;
+        report = new Report(Collections.unmodifiableList(spending), Collections.unmodifiableList(items));
+    }
+
+    private TreeMap<ListSummary, ItemEntry> copyEntries(String key) {
+        var current = stats.get(key);
+        return current == null ? new TreeMap<>(DATE_ORDER) : new TreeMap<>(current.lists);
+    }
+
+    private static ListSummary summarize(Path file, ListSummary old) {
+        long lastModified;
+        long size;
+        try {
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+            size = Files.size(file);
+        } catch (IOException e) {
+            // Removed during scan
+            return null;
+        }
+        if (old != null && old.lastModified == lastModified && old.size == size) {
+            return old;
+        }
+
+        List<GroceryListItem> rows;
+        try {
+            rows = JsonListFormat.read(file.toFile());
+        } catch (IOException | JSONParseException | JSONTypeException e) {
+            // Not a list file, remember it so it isn't read again until it changes
+            return new ListSummary(file, lastModified, size, null, null);
+        }
+
+        var total = BigDecimal.ZERO;
+        var items = new LinkedHashMap<String, ItemEntry>();
+        for (var row : rows) {
+            var amount = row.getAmount() == null ? 1 : row.getAmount();
+            if (row.getPricePerUnit() != null) {
+                total = total.add(row.getPricePerUnit().multiply(BigDecimal.valueOf(amount)));
+            }
+
+            var name = row.getName() == null ? "" : row.getName().strip();
+            var key = name.toLowerCase(Locale.ROOT);
+            if (key.isEmpty()) {
+                continue;
+            }
+            var item = items.get(key);
+            // Later rows' spelling and price win
+            items.put(key, new ItemEntry(name, (item == null ? 0 : item.amountSum) + amount,
+                (item == null ? 0 : item.rowCount) + 1,
+                row.getPricePerUnit() != null || item == null ? row.getPricePerUnit() : item.price));
+        }
+        return new ListSummary(file, lastModified, size, total, new ArrayList<>(items.values()));
+    }
+
+    /**
+     * Get number of lists in index.
+     *
+     * @return number of indexed lists
+     */
+    public int size() {
+        return report.getSpending().size();
+    }
+
+    /**
+     * Get analytics computed at last load or scan.
+     *
+     * @return analytics report
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    private static class ListSummary {
+        private final Path file;
+        private final long lastModified;
+        private final long size;
+        // Null if file is not a list file
+        private final BigDecimal total;
+        private final List<ItemEntry> items;
+
+        ListSummary(Path file, long lastModified, long size, BigDecimal total, List<ItemEntry> items) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.total = total;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Sums of all rows of an item in a single list.
+     */
+    private static class ItemEntry {
+        private final String name;
+        private final long amountSum;
+        private final int rowCount;
+        // Price of last row that has one, or null
+        private final BigDecimal price;
+
+        ItemEntry(String name, long amountSum, int rowCount, BigDecimal price) {
+            this.name = name;
+            this.amountSum = amountSum;
+            this.rowCount = rowCount;
+            this.price = price;
+        }
+
+        String getKey() {
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Analytics over all indexed lists.
+     */
+    public static class Report {
+        private final List<ListSpending> spending;
+        private final List<ItemStats> items;
+
+        Report(List<ListSpending> spending, List<ItemStats> items) {
+            this.spending = spending;
+            this.items = items;
+        }
+
+        /**
+         * Get total spent in each list.
+         *
+         * @return list totals, oldest first
+         */
+        public List<ListSpending> getSpending() {
+            return spending;
+        }
+
+        /**
+         * Get statistics of every item.
+         *
+         * @return item statistics, most frequent first
+         */
+        public List<ItemStats> getItems() {
+            return items;
+        }
+    }
+
+    /**
+     * Total spent in a single list.
+     */
+    public static class ListSpending {
+        private final Path file;
+        private final Instant date;
+        private final BigDecimal total;
+
+        ListSpending(Path file, Instant date, BigDecimal total) {
+            this.file = file;
+            this.date = date;
+            this.total = total;
+        }
+
+        /**
+         * Get list file.
+         *
+         * @return list file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Get list date.
+         *
+         * @return modification time of list file
+         */
+        public Instant getDate() {
+            return date;
+        }
+
+        /**
+         * Get total spent in list. Items with no amount count as one, items with no price are ignored.
+         *
+         * @return list total
+         */
+        public BigDecimal getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Statistics of a single item across all lists. Items are matched by name, ignoring case.
+     */
+    public static class ItemStats {
+        private final TreeMap<ListSummary, ItemEntry> lists;
+        private final List<PricePoint> prices = new ArrayList<>();
+        private final String name;
+        private final int listCount;
+        private final int rowCount;
+        private final long amountSum;
+
+        private ItemStats(TreeMap<ListSummary, ItemEntry> lists) {
+            this.lists = lists;
+            var rows = 0;
+            var amounts = 0L;
+            for (var e : lists.entrySet()) {
+                var item = e.getValue();
+                rows += item.rowCount;
+                amounts += item.amountSum;
+                if (item.price != null) {
+                    var date = Instant.ofEpochMilli(e.getKey().lastModified);
+                    if (!prices.isEmpty() && prices.get(prices.size() - 1).date.equals(date)) {
+                        prices.remove(prices.size() - 1);
+                    }
+                    prices.add(new PricePoint(date, item.price));
+                }
+            }
+            // Lists are in date order, so the latest spelling wins
+            this.name = lists.lastEntry().getValue().name;
+            this.listCount = lists.size();
+            this.rowCount = rows;
+            this.amountSum = amounts;
+        }
+
+        /**
+         * Get item name, as spelled in the latest list.
+         *
+         * @return item name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get number of lists item appears in.
+         *
+         * @return number of lists
+         */
+        public int getListCount() {
+            return listCount;
+        }
+
+        /**
+         * Get average amount of item per row. Rows with no amount count as one.
+         *
+         * @return average amount
+         */
+        public double getAverageAmount() {
+            return (double) amountSum / rowCount;
+        }
+
+        /**
+         * Get item's price in each list it has a price in.
+         *
+         * @return prices, oldest first
+         */
+        public List<PricePoint> getPrices() {
+            return Collections.unmodifiableList(prices);
+        }
+
+        /**
+         * Get item's latest known price.
+         *
+         * @return latest price, or null if item has never had a price
+         */
+        public BigDecimal getLatestPrice() {
+            return prices.isEmpty() ? null : prices.get(prices.size() - 1).price;
+        }
+    }
+
+    /**
+     * Price of an item in a list.
+     */
+    public static class PricePoint {
+        private final Instant date;
+        private final BigDecimal price;
+
+        PricePoint(Instant date, BigDecimal price) {
+            this.date = date;
+            this.price = price;
+        }
+
+        /**
+         * Get list date.
+         *
+         * @return modification time of list file
+         */
+        public Instant getDate() {
+            return date;
+        }
+
+        /**
+         * Get price per unit.
+         *
+         * @return price per unit
+         */
+        public BigDecimal getPrice() {
+            return price;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package me.aleksi.grocify;
+
+import javafx.collections.FXCollections;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Window;
+import javafx.util.StringConverter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+
+/**
+ * Window showing spending analytics over all indexed lists.
+ *
+ * <p>Shows total spent per list over time, and for each item how often it is bought, its average amount and how its
+ * price has changed.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class AnalyticsView extends javafx.stage.Stage {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+
+    private final LineChart<Number, Number> spendingChart = createChart("Total spent");
+    private final LineChart<Number, Number> priceChart = createChart("Price per unit");
+    private final TableView<AnalyticsIndex.ItemStats> itemTable = new TableView<>();
+    private final Label status = new Label();
+
+    /**
+     * Create a new analytics window.
+     *
+     * @param owner owner window
+     */
+    public AnalyticsView(Window owner) {
+        initOwner(owner);
+        setTitle("Grocify Analytics");
+
+        var nameCol = new TableColumn<AnalyticsIndex.ItemStats, String>("Item");
+        nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.prefWidthProperty().bind(itemTable.widthProperty().multiply(0.4));
+
+        var listCountCol = new TableColumn<AnalyticsIndex.ItemStats, Integer>("Lists");
+        listCountCol.setCellValueFactory(new PropertyValueFactory<>("listCount"));
+
+        var amountCol = new TableColumn<AnalyticsIndex.ItemStats, Double>("Avg. Amount");
+        amountCol.setCellValueFactory(new PropertyValueFactory<>("averageAmount"));
+        amountCol.setCellFactory(col -> new TableCell<>() {
+            @Override
+            protected void updateItem(Double item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : String.format("%.1f", item));
+            }
+        });
+
+        var priceCol = new TableColumn<AnalyticsIndex.ItemStats, BigDecimal>("Latest Price");
+        priceCol.setCellValueFactory(new PropertyValueFactory<>("latestPrice"));
+
+        itemTable.getColumns().add(nameCol);
+        itemTable.getColumns().add(listCountCol);
+        itemTable.getColumns().add(amountCol);
+        itemTable.getColumns().add(priceCol);
+        itemTable.getSelectionModel().selectedItemProperty().addListener((ov, oldVal, newVal) -> showPrices(newVal));
+
+        var itemPane = new SplitPane(itemTable, priceChart);
+        itemPane.setDividerPositions(0.5);
+
+        var tabs = new TabPane(new Tab("Spending", spendingChart), new Tab("Items", itemPane));
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+
+        var root = new BorderPane(tabs);
+        root.setBottom(status);
+        setScene(new Scene(root, 800, 500));
+    }
+
+    private static LineChart<Number, Number> createChart(String valueLabel) {
+        var dateAxis = new NumberAxis();
+        dateAxis.setForceZeroInRange(false);
+        dateAxis.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(Number day) {
+                return LocalDate.ofEpochDay(day.longValue()).format(DATE_FORMAT);
+            }
+
+            @Override
+            public Number fromString(String string) {
+                return LocalDate.parse(string, DATE_FORMAT).toEpochDay();
+            }
+        });
+        var valueAxis = new NumberAxis();
+        valueAxis.setLabel(valueLabel);
+
+        var chart = new LineChart<>(dateAxis, valueAxis);
+        chart.setLegendVisible(false);
+        // Thousands of lists would be too slow to draw with symbols and animations
+        chart.setCreateSymbols(false);
+        chart.setAnimated(false);
+        return chart;
+    }
+
+    private static double toDay(Instant date) {
+        return date.atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Show given analytics, keeping selected item selected if it's still there.
+     *
+     * @param report  analytics to show
+     * @param message status message to show below analytics
+     */
+    public void setReport(AnalyticsIndex.Report report, String message) {
+        var series = new XYChart.Series<Number, Number>();
+        for (var list : report.getSpending()) {
+            series.getData().add(new XYChart.Data<>(toDay(list.getDate()), list.getTotal()));
+        }
+        spendingChart.getData().setAll(FXCollections.singletonObservableList(series));
+
+        var selected = itemTable.getSelectionModel().getSelectedItem();
+        itemTable.getItems().setAll(report.getItems());
+        if (selected != null) {
+            report.getItems().stream()
+                .filter(s -> s.getName().equalsIgnoreCase(selected.getName()))
+                .findFirst()
+                .ifPresent(s -> itemTable.getSelectionModel().select(s));
+        }
+
+        status.setText(message);
+    }
+
+    private void showPrices(AnalyticsIndex.ItemStats stats) {
+        if (stats == null) {
+            priceChart.getData().clear();
+            return;
+        }
+
+        var series = new XYChart.Series<Number, Number>();
+        for (var point : stats.getPrices()) {
+            series.getData().add(new XYChart.Data<>(toDay(point.getDate()), point.getPrice()));
+        }
+        priceChart.setTitle(stats.getName());
+        priceChart.getData().setAll(FXCollections.singletonObservableList(series));
+    }
+}
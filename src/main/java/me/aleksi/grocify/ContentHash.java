@@ -0,0 +1,122 @@
+package me.aleksi.grocify;
+
+import javafx.collections.ListChangeListener;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Order-sensitive hash of a list of items, kept up to date as the list changes.
+ *
+ * <p>The hash is the sum of each row's {@link GroceryListItem#contentHash()} multiplied by a power of a constant
+ * matching the row's index. Editing a row or adding rows to the end only touches those rows. Adding or removing rows
+ * in the middle has to rescale the rows after them, which costs about as much as the backing list shifting them.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+class ContentHash {
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+
+    private long[] rows = new long[16];
+    private long[] powers = {1};
+    private int size;
+    private long value;
+
+    /**
+     * Get current hash.
+     *
+     * @return content hash
+     */
+    long get() {
+        return value;
+    }
+
+    /**
+     * Update hash after a list change.
+     *
+     * @param c list change
+     */
+    void onChanged(ListChangeListener.Change<? extends GroceryListItem> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                var from = c.getFrom();
+                var to = c.getTo();
+                var old = Arrays.copyOfRange(rows, from, to);
+                value -= sum(from, to);
+                for (var i = from; i < to; i++) {
+                    rows[c.getPermutation(i)] = old[i - from];
+                }
+                value += sum(from, to);
+            } else if (c.wasUpdated()) {
+                for (var i = c.getFrom(); i < c.getTo(); i++) {
+                    update(i, c.getList().get(i));
+                }
+            } else if (c.wasReplaced() && c.getRemovedSize() == c.getAddedSize()) {
+                for (var i = c.getFrom(); i < c.getTo(); i++) {
+                    update(i, c.getList().get(i));
+                }
+            } else {
+                if (c.wasRemoved()) {
+                    remove(c.getFrom(), c.getRemovedSize());
+                }
+                if (c.wasAdded()) {
+                    insert(c.getFrom(), c.getAddedSubList());
+                }
+            }
+        }
+    }
+
+    /**
+     * Update hash after a row's contents have been edited in place.
+     *
+     * @param index row index
+     * @param item  row item, after edit
+     */
+    void update(int index, GroceryListItem item) {
+        var hash = item.contentHash();
+        value += (hash - rows[index]) * power(index);
+        rows[index] = hash;
+    }
+
+    private void remove(int from, int count) {
+        value -= sum(from, size);
+        System.arraycopy(rows, from + count, rows, from, size - from - count);
+        size -= count;
+        value += sum(from, size);
+    }
+
+    private void insert(int from, List<? extends GroceryListItem> items) {
+        var count = items.size();
+        if (size + count > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, size + count));
+        }
+
+        value -= sum(from, size);
+        System.arraycopy(rows, from, rows, from + count, size - from);
+        for (var i = 0; i < count; i++) {
+            rows[from + i] = items.get(i).contentHash();
+        }
+        size += count;
+        value += sum(from, size);
+    }
+
+    private long sum(int from, int to) {
+        var sum = 0L;
+        for (var i = from; i < to; i++) {
+            sum += rows[i] * power(i);
+        }
+        return sum;
+    }
+
+    private long power(int index) {
+        if (index >= powers.length) {
+            var oldLength = powers.length;
+            powers = Arrays.copyOf(powers, Math.max(oldLength * 2, index + 1));
+            for (var i = oldLength; i < powers.length; i++) {
+                powers[i] = powers[i - 1] * BASE;
+            }
+        }
+        return powers[index];
+    }
+}
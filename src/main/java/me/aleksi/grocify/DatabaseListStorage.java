@@ -0,0 +1,450 @@
+package me.aleksi.grocify;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Storage keeping all lists in an embedded H2 database file. Keys are list ids, see {@link #create(String, List)}
+ * and {@link #findKey(String)}, so a list keeps its key when another list with the same name is saved.
+ *
+ * <p>Item names are indexed case-insensitively, and each list's item count, total and modification time are kept
+ * alongside it, so questions spanning many lists can be answered without reading every list. Writing a list only
+ * updates the rows that have changed, which are found by item id.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class DatabaseListStorage implements ListStorage {
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS lists (" +
+            "id IDENTITY PRIMARY KEY, " +
+            "name VARCHAR NOT NULL UNIQUE, " +
+            "updated TIMESTAMP NOT NULL, " +
+            "item_count INT NOT NULL, " +
+            "total DECFLOAT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS items (" +
+            "list_id BIGINT NOT NULL REFERENCES lists(id) ON DELETE CASCADE, " +
+            "item_id VARCHAR NOT NULL, " +
+            "version BIGINT NOT NULL, " +
+            "position BIGINT NOT NULL, " +
+            "name VARCHAR, " +
+            "name_key VARCHAR NOT NULL, " +
+            "amount INT, " +
+            "price DECFLOAT, " +
+            "PRIMARY KEY (list_id, item_id))",
+        "CREATE INDEX IF NOT EXISTS items_position ON items(list_id, position)",
+        "CREATE INDEX IF NOT EXISTS items_name_key ON items(name_key)",
+        "CREATE INDEX IF NOT EXISTS lists_updated ON lists(updated)",
+    };
+
+    // Room between positions of neighbouring rows, so rows can be inserted without moving others
+    private static final long POSITION_GAP = 1 << 16;
+
+    private final String url;
+    private Connection connection;
+
+    /**
+     * Create a new storage using given database file. The file is created when first needed.
+     *
+     * @param path database file path, without H2's file extension
+     */
+    public DatabaseListStorage(Path path) {
+        this.url = "jdbc:h2:file:" + path.toAbsolutePath();
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized Connection getConnection() throws SQLException {
+        if (connection == null) {
+            connection = DriverManager.getConnection(url);
+            try (var stmt = connection.createStatement()) {
+                for (var sql : SCHEMA) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Close database connection. It is opened again if needed.
+     */
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            connection = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<GroceryListItem> read(String key) throws IOException {
+        try (var stmt = getConnection().prepareStatement(
+            "SELECT item_id, version, name, amount, price FROM items WHERE list_id = ? ORDER BY position")) {
+            stmt.setLong(1, parseKey(key));
+            var items = new ArrayList<GroceryListItem>();
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new GroceryListItem(rs.getString(1), rs.getLong(2), rs.getString(3),
+                        rs.getObject(4, Integer.class), rs.getBigDecimal(5)));
+                }
+            }
+            return items;
+        } catch (SQLException e) {
+            throw new IOException("Error reading list from database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write list, only touching the rows that have been added, edited, moved or removed since it was stored.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void write(String key, List<GroceryListItem> items) throws IOException {
+        var listId = parseKey(key);
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement("SELECT 1 FROM lists WHERE id = ?")) {
+                    stmt.setLong(1, listId);
+                    try (var rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("List has been removed from database");
+                        }
+                    }
+                }
+                writeList(conn, listId, items);
+            });
+        } catch (SQLException e) {
+            throw new IOException("Error writing list to database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Add a new list to database.
+     *
+     * @param name  list name, must not be in use
+     * @param items list items
+     * @return key of new list
+     * @throws IOException if list cannot be written or name is in use
+     */
+    public synchronized String create(String name, List<GroceryListItem> items) throws IOException {
+        var listId = new long[1];
+        try {
+            transaction(conn -> {
+                try (var stmt = conn.prepareStatement(
+                    "INSERT INTO lists (name, updated, item_count, total) VALUES (?, ?, 0, 0)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, name);
+                    stmt.setTimestamp(2, Timestamp.from(Instant.now()));
+                    stmt.executeUpdate();
+                    try (var rs = stmt.getGeneratedKeys()) {
+                        rs.next();
+                        listId[0] = rs.getLong(1);
+                    }
+                }
+                writeList(conn, listId[0], items);
+            });
+        } catch (SQLException e) {
+            throw new IOException("Error writing list to database: " + e.getMessage(), e);
+        }
+        return Long.toString(listId[0]);
+    }
+
+    /**
+     * Find list with given name.
+     *
+     * @param name list name
+     * @return key of list, or null if there's no list with given name
+     * @throws IOException if database cannot be read
+     */
+    public synchronized String findKey(String name) throws IOException {
+        try (var stmt = getConnection().prepareStatement("SELECT id FROM lists WHERE name = ?")) {
+            stmt.setString(1, name);
+            try (var rs = stmt.executeQuery()) {
+                return rs.next() ? Long.toString(rs.getLong(1)) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error reading database: " + e.getMessage(), e);
+        }
+    }
+
+    private static long parseKey(String key) throws IOException {
+        try {
+            return Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid database list key: " + key, e);
+        }
+    }
+
+    private void transaction(SqlWork work) throws SQLException {
+        var conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            work.run(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void writeList(Connection conn, long listId, List<GroceryListItem> items) throws SQLException {
+        var total = BigDecimal.ZERO;
+        for (var item : items) {
+            if (item.getPricePerUnit() != null) {
+                var amount = item.getAmount() == null ? 1 : item.getAmount();
+                total = total.add(item.getPricePerUnit().multiply(BigDecimal.valueOf(amount)));
+            }
+        }
+        try (var stmt = conn.prepareStatement(
+            "UPDATE lists SET updated = ?, item_count = ?, total = ? WHERE id = ?")) {
+            stmt.setTimestamp(1, Timestamp.from(Instant.now()));
+            stmt.setInt(2, items.size());
+            stmt.setBigDecimal(3, total);
+            stmt.setLong(4, listId);
+            stmt.executeUpdate();
+        }
+
+        var stored = new HashMap<String, StoredRow>();
+        try (var stmt = conn.prepareStatement(
+            "SELECT item_id, position, version, name, amount, price FROM items WHERE list_id = ?")) {
+            stmt.setLong(1, listId);
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    var amount = rs.getInt(5);
+                    var item = new GroceryListItem(rs.getString(1), rs.getLong(3), rs.getString(4),
+                        rs.wasNull() ? null : amount, rs.getBigDecimal(6));
+                    stored.put(item.getId(), new StoredRow(item, rs.getLong(2)));
+                }
+            }
+        }
+
+        var positions = assignPositions(items, stored);
+        try (var update = conn.prepareStatement(
+            "UPDATE items SET name = ?, name_key = ?, amount = ?, price = ?, version = ?, position = ? " +
+                "WHERE list_id = ? AND item_id = ?");
+             var insert = conn.prepareStatement(
+                 "INSERT INTO items (name, name_key, amount, price, version, position, list_id, item_id) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (var i = 0; i < items.size(); i++) {
+                var item = items.get(i);
+                var row = stored.remove(item.getId());
+                PreparedStatement stmt;
+                if (row != null) {
+                    if (row.position == positions[i] && row.item.contentHash() == item.contentHash()
+                        && row.item.getVersion() == item.getVersion()) {
+                        continue;
+                    }
+                    stmt = update;
+                } else {
+                    stmt = insert;
+                }
+                stmt.setString(1, item.getName());
+                stmt.setString(2, nameKey(item.getName()));
+                stmt.setObject(3, item.getAmount(), Types.INTEGER);
+                stmt.setBigDecimal(4, item.getPricePerUnit());
+                stmt.setLong(5, item.getVersion());
+                stmt.setLong(6, positions[i]);
+                stmt.setLong(7, listId);
+                stmt.setString(8, item.getId());
+                stmt.addBatch();
+            }
+            update.executeBatch();
+            insert.executeBatch();
+        }
+
+        // Rows left are no longer in list
+        if (!stored.isEmpty()) {
+            try (var stmt = conn.prepareStatement("DELETE FROM items WHERE list_id = ? AND item_id = ?")) {
+                for (var id : stored.keySet()) {
+                    stmt.setLong(1, listId);
+                    stmt.setString(2, id);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Assign positions to items so that as many stored rows as possible keep theirs.
+     *
+     * <p>The longest run of stored rows that are still in the same order keep their positions, and other rows are
+     * spread out in the gaps between them. Positions are only renumbered when a gap has run out.</p>
+     *
+     * @return position of each item
+     */
+    private static long[] assignPositions(List<GroceryListItem> items, Map<String, StoredRow> stored) {
+        var positions = new long[items.size()];
+        var kept = new boolean[items.size()];
+
+        // Longest increasing subsequence of stored positions, in patience sorting style
+        var tails = new int[items.size()];
+        var previous = new int[items.size()];
+        var length = 0;
+        for (var i = 0; i < items.size(); i++) {
+            var row = stored.get(items.get(i).getId());
+            if (row == null) {
+                continue;
+            }
+            positions[i] = row.position;
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (positions[tails[mid]] < row.position) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        for (var i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            kept[i] = true;
+        }
+
+        var low = 0L;
+        for (var i = 0; i < items.size(); ) {
+            if (kept[i]) {
+                low = positions[i++];
+                continue;
+            }
+            var end = i;
+            while (end < items.size() && !kept[end]) {
+                end++;
+            }
+            var high = end < items.size() ? positions[end] : low + (end - i + 1) * POSITION_GAP;
+            var step = (high - low) / (end - i + 1);
+            if (step == 0) {
+                // No room left between neighbours
+                for (var j = 0; j < items.size(); j++) {
+                    positions[j] = (j + 1) * POSITION_GAP;
+                }
+                return positions;
+            }
+            for (; i < end; i++) {
+                low += step;
+                positions[i] = low;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Get names of all stored lists, most recently updated first.
+     *
+     * @return list names
+     * @throws IOException if database cannot be read
+     */
+    public synchronized List<String> listNames() throws IOException {
+        try (var stmt = getConnection().createStatement();
+             var rs = stmt.executeQuery("SELECT name FROM lists ORDER BY updated DESC")) {
+            var names = new ArrayList<String>();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+            return names;
+        } catch (SQLException e) {
+            throw new IOException("Error reading database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get total spent on items whose name starts with given text, in lists updated during given time.
+     *
+     * <p>Items with no amount count as one. Items with no price are ignored.</p>
+     *
+     * @param itemName item name prefix, case-insensitive
+     * @param from     start of time range, inclusive
+     * @param to       end of time range, exclusive
+     * @return amount spent and number of lists it was spent in
+     * @throws IOException if database cannot be read
+     */
+    public synchronized Spending spending(String itemName, Instant from, Instant to) throws IOException {
+        var pattern = nameKey(itemName).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        try (var stmt = getConnection().prepareStatement(
+            "SELECT COUNT(DISTINCT l.id), SUM(COALESCE(i.amount, 1) * i.price) " +
+                "FROM items i JOIN lists l ON l.id = i.list_id " +
+                "WHERE i.name_key LIKE ? AND i.price IS NOT NULL AND l.updated >= ? AND l.updated < ?")) {
+            stmt.setString(1, pattern);
+            stmt.setTimestamp(2, Timestamp.from(from));
+            stmt.setTimestamp(3, Timestamp.from(to));
+            try (var rs = stmt.executeQuery()) {
+                rs.next();
+                var total = rs.getBigDecimal(2);
+                return new Spending(rs.getInt(1), total == null ? BigDecimal.ZERO : total);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error reading database: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Result of a spending query.
+     */
+    public static class Spending {
+        private final int listCount;
+        private final BigDecimal total;
+
+        Spending(int listCount, BigDecimal total) {
+            this.listCount = listCount;
+            this.total = total;
+        }
+
+        /**
+         * Get number of lists with matching items.
+         *
+         * @return number of lists
+         */
+        public int getListCount() {
+            return listCount;
+        }
+
+        /**
+         * Get total spent on matching items.
+         *
+         * @return total spent
+         */
+        public BigDecimal getTotal() {
+            return total;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private static class StoredRow {
+        final GroceryListItem item;
+        final long position;
+
+        StoredRow(GroceryListItem item, long position) {
+            this.item = item;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package me.aleksi.grocify;
+
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Index of item names for finding items that are probably the same thing spelled differently.
+ *
+ * <p>Names are normalized by ignoring case and extra whitespace, then compared by edit distance, counting swapped
+ * neighbouring letters as a single edit. Short names must match exactly after normalizing, longer ones may differ by
+ * one or two edits. Distinct names are kept in a BK-tree, so finding similar names only compares against a small part
+ * of the index.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+class DuplicateFinder {
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<GroceryListItem, String> keys = new IdentityHashMap<>();
+    private Node root;
+    private int emptyNodes;
+
+    /**
+     * Normalize item name for comparison.
+     *
+     * @param name item name
+     * @return normalized name, empty if name is null or blank
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        return Normalizer.normalize(name, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ")
+            .toLowerCase(Locale.ROOT);
+    }
+
+    private static int maxDistance(String key) {
+        var length = key.codePointCount(0, key.length());
+        return length < 4 ? 0 : length < 8 ? 1 : 2;
+    }
+
+    /**
+     * Damerau-Levenshtein distance: insertions, deletions, substitutions and transpositions of neighbouring
+     * characters each count as one edit. Unlike the restricted variant, this is a metric, which the BK-tree needs.
+     *
+     * @param a first string
+     * @param b second string
+     * @return edit distance
+     */
+    static int distance(String a, String b) {
+        var max = a.length() + b.length();
+        var d = new int[a.length() + 2][b.length() + 2];
+        d[0][0] = max;
+        for (var i = 0; i <= a.length(); i++) {
+            d[i + 1][0] = max;
+            d[i + 1][1] = i;
+        }
+        for (var j = 0; j <= b.length(); j++) {
+            d[0][j + 1] = max;
+            d[1][j + 1] = j;
+        }
+
+        // Last row each character was seen in
+        var lastRow = new HashMap<Character, Integer>();
+        for (var i = 1; i <= a.length(); i++) {
+            var lastMatchColumn = 0;
+            for (var j = 1; j <= b.length(); j++) {
+                var i1 = lastRow.getOrDefault(b.charAt(j - 1), 0);
+                var j1 = lastMatchColumn;
+                var cost = 1;
+                if (a.charAt(i - 1) == b.charAt(j - 1)) {
+                    cost = 0;
+                    lastMatchColumn = j;
+                }
+                d[i + 1][j + 1] = Math.min(Math.min(d[i][j] + cost, d[i + 1][j] + 1),
+                    Math.min(d[i][j + 1] + 1, d[i1][j1] + (i - i1 - 1) + 1 + (j - j1 - 1)));
+            }
+            lastRow.put(a.charAt(i - 1), i);
+        }
+        return d[a.length() + 1][b.length() + 1];
+    }
+
+    /**
+     * Add item to index under its current name.
+     *
+     * @param item item to add
+     */
+    void add(GroceryListItem item) {
+        add(item, item.getName());
+    }
+
+    /**
+     * Add item to index under given name.
+     *
+     * @param item item to add
+     * @param name item's name, in case it's being changed on another thread
+     */
+    void add(GroceryListItem item, String name) {
+        var key = normalize(name);
+        keys.put(item, key);
+        if (key.isEmpty()) {
+            return;
+        }
+
+        var node = nodes.get(key);
+        if (node == null) {
+            node = new Node(key);
+            nodes.put(key, node);
+            insert(node);
+        } else if (node.items.isEmpty()) {
+            emptyNodes--;
+        }
+        node.items.add(item);
+    }
+
+    /**
+     * Remove item from index.
+     *
+     * @param item item to remove
+     */
+    void remove(GroceryListItem item) {
+        var key = keys.remove(item);
+        var node = key == null ? null : nodes.get(key);
+        if (node == null) {
+            return;
+        }
+
+        node.items.remove(item);
+        if (node.items.isEmpty() && ++emptyNodes > nodes.size() / 2 + 64) {
+            // Empty nodes are left in the tree, rebuild once they're the majority
+            var items = new IdentityHashMap<>(keys);
+            nodes.clear();
+            keys.clear();
+            root = null;
+            emptyNodes = 0;
+            items.forEach(this::add);
+        }
+    }
+
+    /**
+     * Update index after item may have been renamed.
+     *
+     * @param item renamed item
+     */
+    void update(GroceryListItem item) {
+        if (!normalize(item.getName()).equals(keys.get(item))) {
+            remove(item);
+            add(item);
+        }
+    }
+
+    /**
+     * Find indexed items with a name similar to given item.
+     *
+     * @param item item to compare to, need not be indexed
+     * @return similar items, not including the item itself
+     */
+    List<GroceryListItem> findSimilar(GroceryListItem item) {
+        var key = keys.containsKey(item) ? keys.get(item) : normalize(item.getName());
+        return findSimilar(key, item);
+    }
+
+    /**
+     * Find indexed items with a name similar to given name.
+     *
+     * @param name name to compare to
+     * @return similar items
+     */
+    List<GroceryListItem> findSimilar(String name) {
+        return findSimilar(normalize(name), null);
+    }
+
+    private List<GroceryListItem> findSimilar(String key, GroceryListItem item) {
+        var similar = new ArrayList<GroceryListItem>();
+        if (key.isEmpty()) {
+            return similar;
+        }
+        for (var node : search(key)) {
+            for (var other : node.items) {
+                if (other != item) {
+                    similar.add(other);
+                }
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Find all groups of items with similar names.
+     *
+     * @return groups of two or more similar items
+     */
+    List<List<GroceryListItem>> groups() {
+        var parents = new IdentityHashMap<Node, Node>();
+        for (var node : nodes.values()) {
+            if (node.items.isEmpty()) {
+                continue;
+            }
+            parents.putIfAbsent(node, node);
+            for (var other : search(node.key)) {
+                parents.putIfAbsent(other, other);
+                var a = find(parents, node);
+                var b = find(parents, other);
+                if (a != b) {
+                    parents.put(a, b);
+                }
+            }
+        }
+
+        var groups = new IdentityHashMap<Node, List<GroceryListItem>>();
+        for (var entry : keys.entrySet()) {
+            var node = nodes.get(entry.getValue());
+            if (node != null) {
+                groups.computeIfAbsent(find(parents, node), n -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        var result = new ArrayList<List<GroceryListItem>>();
+        for (var group : groups.values()) {
+            if (group.size() > 1) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    private static Node find(Map<Node, Node> parents, Node node) {
+        var root = node;
+        while (parents.get(root) != root) {
+            root = parents.get(root);
+        }
+        // Path compression
+        while (node != root) {
+            var next = parents.get(node);
+            parents.put(node, root);
+            node = next;
+        }
+        return root;
+    }
+
+    private void insert(Node node) {
+        if (root == null) {
+            root = node;
+            return;
+        }
+
+        var parent = root;
+        while (true) {
+            var d = distance(node.key, parent.key);
+            if (d >= parent.children.length) {
+                parent.children = Arrays.copyOf(parent.children, d + 1);
+            }
+            if (parent.children[d] == null) {
+                parent.children[d] = node;
+                return;
+            }
+            parent = parent.children[d];
+        }
+    }
+
+    /**
+     * Find non-empty nodes close enough to given key, both ways.
+     */
+    private List<Node> search(String key) {
+        var radius = maxDistance(key);
+        var found = new ArrayList<Node>();
+        if (root == null) {
+            return found;
+        }
+
+        var stack = new ArrayDeque<Node>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            var node = stack.pop();
+            var d = distance(key, node.key);
+            if (d <= radius && d <= maxDistance(node.key) && !node.items.isEmpty()) {
+                found.add(node);
+            }
+            // Triangle inequality: only children at distance d ± radius can be close enough
+            for (var i = Math.max(d - radius, 0); i <= d + radius && i < node.children.length; i++) {
+                if (node.children[i] != null) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static class Node {
+        private final String key;
+        // Items are few per name, so identity lookups in a list are fine
+        private final List<GroceryListItem> items = new ArrayList<>(1);
+        private Node[] children = new Node[0];
+
+        Node(String key) {
+            this.key = key;
+        }
+    }
+}
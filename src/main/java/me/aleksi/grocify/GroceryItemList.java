@@ -0,0 +1,101 @@
+package me.aleksi.grocify;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Observable list of grocery list items that can group several modifications into a single change.
+ *
+ * <p>Like any observable list used by a TableView, it must only be modified on the FX thread. Background threads
+ * should go through a {@link ListUpdateQueue}.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class GroceryItemList extends ModifiableObservableListBase<GroceryListItem> {
+    private final List<GroceryListItem> items = new ArrayList<>();
+
+    /**
+     * Run given modifications, notifying listeners once with a single change when they're done.
+     *
+     * @param changes modifications to run
+     */
+    public void batch(Runnable changes) {
+        beginChange();
+        try {
+            changes.run();
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Notify listeners that item at given index has been edited in place.
+     *
+     * @param index index of edited item
+     */
+    public void updated(int index) {
+        beginChange();
+        nextUpdate(index);
+        endChange();
+    }
+
+    /**
+     * Remove items matching filter in a single pass over the list.
+     *
+     * @param filter predicate for items to remove
+     * @return true if any items were removed
+     */
+    @Override
+    public boolean removeIf(Predicate<? super GroceryListItem> filter) {
+        var kept = 0;
+        beginChange();
+        try {
+            for (var i = 0; i < items.size(); i++) {
+                var item = items.get(i);
+                if (filter.test(item)) {
+                    // Rows before it have been compacted already, so it's at the next kept index
+                    nextRemove(kept, item);
+                } else {
+                    items.set(kept++, item);
+                }
+            }
+            if (kept == items.size()) {
+                return false;
+            }
+            items.subList(kept, items.size()).clear();
+            modCount++;
+            return true;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public GroceryListItem get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    protected void doAdd(int index, GroceryListItem element) {
+        items.add(index, element);
+    }
+
+    @Override
+    protected GroceryListItem doSet(int index, GroceryListItem element) {
+        return items.set(index, element);
+    }
+
+    @Override
+    protected GroceryListItem doRemove(int index) {
+        return items.remove(index);
+    }
+}
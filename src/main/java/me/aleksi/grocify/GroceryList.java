@@ -2,32 +2,81 @@ package me.aleksi.grocify;
 
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
+import javafx.collections.transformation.TransformationList;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.input.*;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * TableView with additional data for working with files.
  *
  * <p>Keeps track of file name and whether it has been saved.</p>
  *
+ * <p>Clicking column headers sorts the table without changing list order, and the sort order is saved with the list.
+ * Names are sorted by the rules of the user's language, and rows that sort equal stay in list order. Edited rows are
+ * moved to their new place without sorting the whole table again.</p>
+ *
  * @author Aleksi Kervinen
  * @version 1.0-SNAPSHOT
  */
 public class GroceryList extends TableView<GroceryListItem> {
     private static final DataFormat SERIALIZE_TYPE = new DataFormat("application/x-java-serialized-object");
-    private final ObservableList<GroceryListItem> data = FXCollections.observableArrayList();
+    private static final String DUPLICATE_STYLE = "-fx-control-inner-background: #fff3cd;";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_AMOUNT = "amount";
+    private static final String COLUMN_PRICE = "price";
+    private static final Comparator<GroceryListItem> BY_NAME = Comparator.comparing(GroceryListItem::getNameKey);
+    private static final Comparator<GroceryListItem> BY_AMOUNT = (a, b) -> {
+        var x = a.getAmount();
+        var y = b.getAmount();
+        if (x == null || y == null) {
+            return x == null ? (y == null ? 0 : -1) : 1;
+        }
+        return Integer.compare(x, y);
+    };
+    private static final Comparator<GroceryListItem> BY_PRICE = (a, b) -> {
+        if (a.getPricePerUnit() == null || b.getPricePerUnit() == null) {
+            return a.getPricePerUnit() == null ? (b.getPricePerUnit() == null ? 0 : -1) : 1;
+        }
+        var cmp = Double.compare(a.getPriceKey(), b.getPriceKey());
+        return cmp != 0 ? cmp : a.getPricePerUnit().compareTo(b.getPricePerUnit());
+    };
+    private static final Comparator<GroceryListItem> BY_LIST_ORDER = Comparator.comparingLong(
+        GroceryListItem::getListOrder);
+    private final ObservableList<GroceryListItem> data;
+    private final SortedList<GroceryListItem> sorted;
+    private final PagedItems pagedItems;
+    private final GroceryItemList itemList;
+    private ListUpdateQueue updateQueue;
     private final ObjectProperty<Boolean> dirty = new SimpleObjectProperty<>(false);
+    private final ContentHash contentHash = new ContentHash();
+    private long savedContentHash;
+    private boolean forcedDirty;
     private String name;
     private File file;
+    private long fileLastModified;
+    private long fileSize;
+    private ListMerge.Base mergeBase = ListMerge.Base.EMPTY;
+    private PriceCatalog priceCatalog;
+    private ListStorage storage;
+    private String storageKey;
+    private final DuplicateFinder duplicateFinder;
+    private final Set<GroceryListItem> flaggedDuplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Consumer<List<GroceryListItem>> onDuplicatesFound;
+    private long nextListOrder;
 
     /**
      * Create a new untitled GroceryList.
@@ -42,8 +91,40 @@ public class GroceryList extends TableView<GroceryListItem> {
      * @param name list name
      */
     public GroceryList(String name) {
+        this(name, new GroceryItemList(), null);
+    }
+
+    /**
+     * Create a new GroceryList with given name, showing a paged file.
+     *
+     * <p>Paged lists can only be edited in place or added to. Rows cannot be deleted, moved or sorted.</p>
+     *
+     * @param name       list name
+     * @param pagedItems paged items of backing file
+     */
+    public GroceryList(String name, PagedItems pagedItems) {
+        this(name, pagedItems, pagedItems);
+        setFile(pagedItems.getFile());
+    }
+
+    private GroceryList(String name, ObservableList<GroceryListItem> data, PagedItems pagedItems) {
+        this.data = data;
+        this.pagedItems = pagedItems;
+        // Non-paged lists always use a GroceryItemList
+        this.itemList = pagedItems == null ? (GroceryItemList) data : null;
+        this.duplicateFinder = pagedItems == null ? new DuplicateFinder() : null;
         this.setEditable(true);
-        this.setItems(data);
+        if (pagedItems == null) {
+            sorted = new SortedList<>(new ReplaceUpdates(data));
+            this.setItems(sorted);
+            this.setSortPolicy(tv -> {
+                applySortOrder();
+                return true;
+            });
+        } else {
+            sorted = null;
+            this.setItems(data);
+        }
 
         setName(name);
 
@@ -52,10 +133,17 @@ public class GroceryList extends TableView<GroceryListItem> {
 
         // Setup row drag-n-drop reordering
         this.setRowFactory(tv -> {
-            var row = new TableRow<GroceryListItem>();
+            var row = new TableRow<GroceryListItem>() {
+                @Override
+                protected void updateItem(GroceryListItem item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setStyle(!empty && flaggedDuplicates.contains(item) ? DUPLICATE_STYLE : "");
+                }
+            };
 
             row.setOnDragDetected(e -> {
-                if (row.isEmpty()) return;
+                // Rows can only be moved when they're shown in list order
+                if (row.isEmpty() || pagedItems != null || !getSortOrder().isEmpty()) return;
 
                 Integer idx = row.getIndex();
                 Dragboard db = row.startDragAndDrop(TransferMode.MOVE);
@@ -82,17 +170,17 @@ public class GroceryList extends TableView<GroceryListItem> {
                 var db = e.getDragboard();
                 if (db.hasContent(SERIALIZE_TYPE) && db.getContent(SERIALIZE_TYPE) instanceof Integer) {
                     int idx = (Integer) db.getContent(SERIALIZE_TYPE);
-                    var item = tv.getItems().remove(idx);
+                    var item = data.remove(idx);
 
                     int destIdx;
 
                     if (row.isEmpty()) {
-                        destIdx = tv.getItems().size();
+                        destIdx = data.size();
                     } else {
                         destIdx = row.getIndex();
                     }
 
-                    tv.getItems().add(destIdx, item);
+                    data.add(destIdx, item);
 
                     e.setDropCompleted(true);
                     tv.getSelectionModel().select(destIdx);
@@ -104,6 +192,7 @@ public class GroceryList extends TableView<GroceryListItem> {
         });
 
         var nameCol = new TableColumn<GroceryListItem, String>("Name");
+        nameCol.setId(COLUMN_NAME);
         nameCol.setEditable(true);
         nameCol.prefWidthProperty().bind(this.widthProperty().divide(2));
         nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
@@ -114,15 +203,18 @@ public class GroceryList extends TableView<GroceryListItem> {
             }
         });
         nameCol.setOnEditCommit(cee -> {
-            setDirty(true);
             var item = cee.getRowValue();
             item.setName(cee.getNewValue());
-            if (item.isEmpty()) {
+            if (item.isEmpty() && pagedItems == null) {
                 data.remove(item);
+            } else {
+                rowEdited(cee.getTablePosition().getRow(), item);
+                checkDuplicates(item);
             }
         });
 
         var amountCol = new TableColumn<GroceryListItem, Integer>("Amount");
+        amountCol.setId(COLUMN_AMOUNT);
         amountCol.setEditable(true);
         amountCol.prefWidthProperty().bind(this.widthProperty().divide(4));
         amountCol.setCellValueFactory(new PropertyValueFactory<>("amount"));
@@ -133,11 +225,12 @@ public class GroceryList extends TableView<GroceryListItem> {
             }
         });
         amountCol.setOnEditCommit(cee -> {
-            setDirty(true);
             cee.getRowValue().setAmount(cee.getNewValue());
+            rowEdited(cee.getTablePosition().getRow(), cee.getRowValue());
         });
 
         var priceCol = new TableColumn<GroceryListItem, BigDecimal>("Price per Unit");
+        priceCol.setId(COLUMN_PRICE);
         priceCol.setEditable(true);
         priceCol.prefWidthProperty().bind(this.widthProperty().divide(4));
         priceCol.setCellValueFactory(new PropertyValueFactory<>("pricePerUnit"));
@@ -148,27 +241,170 @@ public class GroceryList extends TableView<GroceryListItem> {
             }
         });
         priceCol.setOnEditCommit(cee -> {
-            setDirty(true);
-            cee.getRowValue().setPricePerUnit(cee.getNewValue());
+            var item = cee.getRowValue();
+            item.setPricePerUnit(cee.getNewValue());
+            rowEdited(cee.getTablePosition().getRow(), item);
+            if (priceCatalog != null) {
+                priceCatalog.record(item.getName(), item.getPricePerUnit());
+            }
         });
 
         this.getColumns().add(nameCol);
         this.getColumns().add(amountCol);
         this.getColumns().add(priceCol);
 
+        if (pagedItems != null) {
+            // Sorting would need every row in memory
+            this.getColumns().forEach(col -> col.setSortable(false));
+        }
+
         // Delete active row
         this.setOnKeyPressed(t -> {
-            if (t.getCode() == KeyCode.DELETE) {
+            if (t.getCode() == KeyCode.DELETE && pagedItems == null) {
                 var idx = this.getSelectionModel().getSelectedIndex();
                 if (idx >= 0) {
-                    data.remove(idx);
-                    setDirty(true);
+                    data.remove(sorted.getSourceIndex(idx));
                 }
             }
         });
 
-        // Set as dirty if items are added/removed.
-        this.getItems().addListener((ListChangeListener<? super GroceryListItem>) e -> this.setDirty(true));
+        // Keep content hash and duplicate index up to date as items are added, removed or moved
+        data.addListener((ListChangeListener<? super GroceryListItem>) e -> {
+            if (pagedItems == null) {
+                contentHash.onChanged(e);
+                e.reset();
+                updateDuplicates(e);
+                e.reset();
+                updateListOrder(e);
+            }
+            updateDirty();
+        });
+    }
+
+    private void updateListOrder(ListChangeListener.Change<? extends GroceryListItem> c) {
+        while (c.next()) {
+            // Items added in the middle sort equal after the rest until list is sorted again
+            for (var i = c.getFrom(); c.wasAdded() && i < c.getTo(); i++) {
+                c.getList().get(i).setListOrder(nextListOrder++);
+            }
+        }
+    }
+
+    /**
+     * Sort table by sort order of columns, keeping list order.
+     */
+    private void applySortOrder() {
+        Comparator<GroceryListItem> comparator = null;
+        for (var column : getSortOrder()) {
+            var byColumn = COLUMN_AMOUNT.equals(column.getId()) ? BY_AMOUNT
+                : COLUMN_PRICE.equals(column.getId()) ? BY_PRICE : BY_NAME;
+            if (column.getSortType() == TableColumn.SortType.DESCENDING) {
+                byColumn = byColumn.reversed();
+            }
+            comparator = comparator == null ? byColumn : comparator.thenComparing(byColumn);
+        }
+
+        if (comparator != null) {
+            // Number rows by current list order, so rows that sort equal keep it
+            nextListOrder = 0;
+            for (var item : data) {
+                item.setListOrder(nextListOrder++);
+            }
+            comparator = comparator.thenComparing(BY_LIST_ORDER);
+        }
+        sorted.setComparator(comparator);
+        updateDirty();
+    }
+
+    private long currentContentHash() {
+        // Sort order is saved with the list, so changing it is an edit too
+        return contentHash.get() + getSortOrderString().hashCode() * 0x9e3779b97f4a7c15L;
+    }
+
+    private void updateDuplicates(ListChangeListener.Change<? extends GroceryListItem> c) {
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue;
+            }
+            if (c.wasUpdated()) {
+                for (var i = c.getFrom(); i < c.getTo(); i++) {
+                    duplicateFinder.update(c.getList().get(i));
+                }
+                continue;
+            }
+            for (var item : c.getRemoved()) {
+                duplicateFinder.remove(item);
+                flaggedDuplicates.remove(item);
+            }
+            for (var item : c.getAddedSubList()) {
+                duplicateFinder.add(item);
+            }
+        }
+    }
+
+    private void rowEdited(int index, GroceryListItem item) {
+        if (pagedItems != null) {
+            pagedItems.markEdited(index, item);
+            updateDirty();
+        } else {
+            // Listener updates content hash
+            itemList.updated(sorted.getSourceIndex(index));
+        }
+    }
+
+    private void updateDirty() {
+        if (pagedItems != null) {
+            dirty.set(forcedDirty || pagedItems.isModified());
+        } else {
+            dirty.set(forcedDirty || currentContentHash() != savedContentHash);
+        }
+    }
+
+    /**
+     * Get items in list order, however the table is sorted. Unlike {@link #getItems()}, this list can be modified.
+     *
+     * @return list items
+     */
+    public ObservableList<GroceryListItem> getData() {
+        return data;
+    }
+
+    /**
+     * Get sort order of table as saved in list files.
+     *
+     * @return comma separated list of sorted columns and their directions, like "name:asc,price:desc", or an empty
+     * string if table isn't sorted
+     */
+    public String getSortOrderString() {
+        var columns = new StringJoiner(",");
+        for (var column : getSortOrder()) {
+            columns.add(column.getId() + (column.getSortType() == TableColumn.SortType.DESCENDING ? ":desc" : ":asc"));
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Sort table by sort order read from a list file. Unknown columns are ignored. Paged lists cannot be sorted.
+     *
+     * @param sortOrder sort order from {@link #getSortOrderString()}, or null or empty for list order
+     */
+    public void setSortOrderString(String sortOrder) {
+        var columns = new ArrayList<TableColumn<GroceryListItem, ?>>();
+        if (sortOrder != null && pagedItems == null) {
+            for (var part : sortOrder.split(",")) {
+                var sep = part.indexOf(':');
+                var id = sep < 0 ? part.strip() : part.substring(0, sep).strip();
+                var descending = sep >= 0 && part.substring(sep + 1).strip().equalsIgnoreCase("desc");
+                for (var column : getColumns()) {
+                    if (column.getId().equals(id) && !columns.contains(column)) {
+                        column.setSortType(descending ? TableColumn.SortType.DESCENDING
+                            : TableColumn.SortType.ASCENDING);
+                        columns.add(column);
+                    }
+                }
+            }
+        }
+        getSortOrder().setAll(columns);
     }
 
     /**
@@ -212,9 +448,231 @@ public class GroceryList extends TableView<GroceryListItem> {
         this.file = file;
     }
 
+    /**
+     * Get storage list is kept in, if it isn't kept in its own file.
+     *
+     * @return storage where list is kept under {@link #getStorageKey()}, or null if list is kept in {@link #getFile()}
+     */
+    public ListStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Get key list is kept under in its storage.
+     *
+     * @return storage key, or null if list is kept in its own file
+     */
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    /**
+     * Set storage list is kept in and its key there, or null for both if list is kept in its own file.
+     *
+     * @param storage storage or null
+     * @param key     key of list in storage or null
+     */
+    public void setStorage(ListStorage storage, String key) {
+        this.storage = storage;
+        this.storageKey = key;
+    }
+
+    /**
+     * Remember backing file's current modification time and size.
+     *
+     * <p>Should be called whenever list contents are read from or written to the file.</p>
+     */
+    public void updateFileStamp() {
+        fileLastModified = file == null ? 0 : file.lastModified();
+        fileSize = file == null ? 0 : file.length();
+    }
+
+    /**
+     * Remember modification time and size backing file had when list was written, for when it was written on another
+     * thread.
+     *
+     * @param lastModified file modification time, see {@link File#lastModified()}
+     * @param size         file size in bytes
+     */
+    public void setFileStamp(long lastModified, long size) {
+        fileLastModified = lastModified;
+        fileSize = size;
+    }
+
+    /**
+     * Get modification time backing file had when list was last read or written.
+     *
+     * @return file modification time, see {@link File#lastModified()}
+     */
+    public long getFileLastModified() {
+        return fileLastModified;
+    }
+
+    /**
+     * Get size backing file had when list was last read or written.
+     *
+     * @return file size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Get rows as they were when backing file was last read or written, for merging with changes others have made to
+     * it since.
+     *
+     * @return merge base, {@link ListMerge.Base#EMPTY} if list has no file
+     */
+    public ListMerge.Base getMergeBase() {
+        return mergeBase;
+    }
+
+    /**
+     * Set rows as they are in backing file. Should be called whenever list contents are read from the file.
+     *
+     * @param mergeBase merge base
+     */
+    public void setMergeBase(ListMerge.Base mergeBase) {
+        this.mergeBase = mergeBase;
+    }
+
+    /**
+     * Bring list up to date with what was saved by {@link ListMerge#save}, in one batch.
+     *
+     * <p>Rows others have changed or deleted are updated or removed, and rows they have added are inserted, unless
+     * the rows have been edited here while saving. The list is set clean if it hasn't been edited since it was copied
+     * for saving.</p>
+     *
+     * @param result           result of saving list
+     * @param savedContentHash {@link #getContentHash()} of list when it was copied for saving
+     */
+    public void applyMerge(ListMerge.Result result, long savedContentHash) {
+        var unedited = currentContentHash() == savedContentHash;
+        var versions = new HashMap<String, Long>(result.getItems().size() * 2);
+        for (var item : result.getItems()) {
+            versions.put(item.getId(), item.getVersion());
+        }
+
+        if (itemList != null && result.hasChangesFromFile()) {
+            var local = new HashSet<String>(itemList.size() * 2);
+            itemList.batch(() -> {
+                for (var i = itemList.size() - 1; i >= 0; i--) {
+                    var item = itemList.get(i);
+                    local.add(item.getId());
+                    // Rows edited while saving keep their edits, and win over others' when saved next
+                    if (!mergeBase.isUnchanged(item)) {
+                        continue;
+                    }
+                    var updated = result.getUpdated(item.getId());
+                    if (result.isDeleted(item.getId())) {
+                        itemList.remove(i);
+                    } else if (updated != null) {
+                        item.setName(updated.getName());
+                        item.setAmount(updated.getAmount());
+                        item.setPricePerUnit(updated.getPricePerUnit());
+                        itemList.updated(i);
+                    }
+                }
+
+                // Rows others added go after the row they follow in saved list
+                var insertedAfter = new HashMap<String, List<GroceryListItem>>();
+                String previous = null;
+                for (var item : result.getItems()) {
+                    if (!local.contains(item.getId())) {
+                        insertedAfter.computeIfAbsent(previous, k -> new ArrayList<>()).add(item.copy());
+                    }
+                    previous = item.getId();
+                }
+                if (insertedAfter.isEmpty()) {
+                    return;
+                }
+                var merged = new ArrayList<GroceryListItem>(itemList.size() + insertedAfter.size());
+                addInserted(merged, insertedAfter, null);
+                for (var item : itemList) {
+                    merged.add(item);
+                    addInserted(merged, insertedAfter, item.getId());
+                }
+                itemList.setAll(merged);
+            });
+        }
+
+        for (var item : data) {
+            var version = versions.get(item.getId());
+            if (version != null) {
+                item.setVersion(version);
+            }
+        }
+        mergeBase = result.getBase();
+        setFileStamp(result.getFileLastModified(), result.getFileSize());
+        if (unedited) {
+            setDirty(false);
+        } else {
+            markSaved(savedContentHash);
+        }
+    }
+
+    private static void addInserted(List<GroceryListItem> items, Map<String, List<GroceryListItem>> insertedAfter,
+                                    String id) {
+        var rows = insertedAfter.remove(id);
+        while (rows != null) {
+            items.addAll(rows);
+            rows = insertedAfter.remove(rows.get(rows.size() - 1).getId());
+        }
+    }
+
+    /**
+     * Get queue for modifying list from background threads.
+     *
+     * @return update queue for list
+     * @throws IllegalStateException if list is paged
+     */
+    public ListUpdateQueue getUpdateQueue() {
+        if (itemList == null) {
+            throw new IllegalStateException("paged lists cannot be modified from background threads");
+        }
+        if (updateQueue == null) {
+            updateQueue = new ListUpdateQueue(itemList);
+        }
+        return updateQueue;
+    }
+
+    /**
+     * Get paged items if list is showing a paged file.
+     *
+     * @return paged items, or null if list is fully in memory
+     */
+    public PagedItems getPagedItems() {
+        return pagedItems;
+    }
+
+    /**
+     * Get number of rows currently held in memory.
+     *
+     * @return number of rows in memory
+     */
+    public int getLoadedRowCount() {
+        return pagedItems != null ? pagedItems.getLoadedRowCount() : data.size();
+    }
+
+    /**
+     * Get index of first row that is currently visible.
+     *
+     * @return first visible row index, or 0 if list isn't shown
+     */
+    public int getFirstVisibleIndex() {
+        var flow = (VirtualFlow<?>) lookup(".virtual-flow");
+        if (flow == null || flow.getFirstVisibleCell() == null) {
+            return 0;
+        }
+        return Math.max(flow.getFirstVisibleCell().getIndex(), 0);
+    }
+
     /**
      * Whether list has unsaved edits.
      *
+     * <p>Compares list contents to what they were when list was last marked clean, so edits that are reverted
+     * don't count.</p>
+     *
      * @return true if list has unsaved edits
      */
     public boolean isDirty() {
@@ -222,12 +680,45 @@ public class GroceryList extends TableView<GroceryListItem> {
     }
 
     /**
-     * Set list as dirty.
+     * Set list as dirty or clean.
+     *
+     * <p>Setting list clean remembers current contents as saved. Setting list dirty keeps it dirty regardless of
+     * contents until it's set clean again.</p>
      *
-     * @param dirty true if list has been edited
+     * @param dirty true if list should be considered edited, false if it has just been saved or loaded
      */
     public void setDirty(boolean dirty) {
-        this.dirty.set(dirty);
+        forcedDirty = dirty;
+        if (!dirty) {
+            savedContentHash = currentContentHash();
+        }
+        updateDirty();
+    }
+
+    /**
+     * Get hash of current list contents, to be given to {@link #markSaved(long)} once they're saved.
+     *
+     * @return content hash, or 0 if list is paged
+     */
+    public long getContentHash() {
+        return pagedItems == null ? currentContentHash() : 0;
+    }
+
+    /**
+     * Set list clean if it still has the contents it had when it was saved.
+     *
+     * <p>Used when saving in the background, so edits made while saving keep the list dirty.</p>
+     *
+     * @param savedContentHash {@link #getContentHash()} of saved contents
+     */
+    public void markSaved(long savedContentHash) {
+        if (pagedItems != null) {
+            setDirty(false);
+            return;
+        }
+        this.forcedDirty = false;
+        this.savedContentHash = savedContentHash;
+        updateDirty();
     }
 
     /**
@@ -238,4 +729,308 @@ public class GroceryList extends TableView<GroceryListItem> {
     public ObjectProperty<Boolean> dirtyProperty() {
         return dirty;
     }
+
+    /**
+     * Set price catalog that is updated when prices are edited, or null for none.
+     *
+     * @param priceCatalog price catalog or null
+     */
+    public void setPriceCatalog(PriceCatalog priceCatalog) {
+        this.priceCatalog = priceCatalog;
+    }
+
+    /**
+     * Update item prices from a price catalog in one batch.
+     *
+     * <p>Items with no known price in the catalog are left alone. Paged lists are not repriced.</p>
+     *
+     * @param catalog     catalog to get prices from
+     * @param onlyMissing if true, only fill in items that have no price
+     * @return number of items whose price changed
+     */
+    public int reprice(PriceCatalog catalog, boolean onlyMissing) {
+        if (pagedItems != null) {
+            return 0;
+        }
+
+        var changed = new int[1];
+        itemList.batch(() -> {
+            for (var i = 0; i < itemList.size(); i++) {
+                var item = itemList.get(i);
+                if (onlyMissing && item.getPricePerUnit() != null) {
+                    continue;
+                }
+                var price = catalog.lookup(item.getName());
+                if (price != null && (item.getPricePerUnit() == null || item.getPricePerUnit().compareTo(price) != 0)) {
+                    item.setPricePerUnit(price);
+                    itemList.updated(i);
+                    changed[0]++;
+                }
+            }
+        });
+        return changed[0];
+    }
+
+    /**
+     * Set handler called with a group of similar items when an added or renamed item looks like a duplicate.
+     *
+     * @param handler handler, or null for none
+     */
+    public void setOnDuplicatesFound(Consumer<List<GroceryListItem>> handler) {
+        this.onDuplicatesFound = handler;
+    }
+
+    /**
+     * Check if given item looks like a duplicate of other items in list, and flag them if so.
+     *
+     * <p>Called automatically when an item is renamed in the table. Paged lists are never checked.</p>
+     *
+     * @param item item that has just been added or renamed
+     * @return similar items, not including the item itself
+     */
+    public List<GroceryListItem> checkDuplicates(GroceryListItem item) {
+        if (duplicateFinder == null) {
+            return List.of();
+        }
+
+        var similar = duplicateFinder.findSimilar(item);
+        if (!similar.isEmpty()) {
+            var group = new ArrayList<GroceryListItem>(similar.size() + 1);
+            group.add(item);
+            group.addAll(similar);
+            flagDuplicates(List.of(group));
+            if (onDuplicatesFound != null) {
+                onDuplicatesFound.accept(group);
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Find all groups of items with similar names on a background thread.
+     *
+     * <p>The list is copied on the calling thread, which must be the FX thread. Paged lists have no duplicates.</p>
+     *
+     * @param executor executor to search on
+     * @return future completed with groups of two or more similar items
+     */
+    public CompletableFuture<List<List<GroceryListItem>>> findDuplicates(Executor executor) {
+        if (itemList == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        var items = new ArrayList<>(itemList);
+        var names = new String[items.size()];
+        for (var i = 0; i < names.length; i++) {
+            names[i] = items.get(i).getName();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            var finder = new DuplicateFinder();
+            for (var i = 0; i < names.length; i++) {
+                finder.add(items.get(i), names[i]);
+            }
+            return finder.groups();
+        }, executor);
+    }
+
+    /**
+     * Find items in other lists with names similar to items in this list, on a background thread.
+     *
+     * <p>Lists are copied on the calling thread, which must be the FX thread. Paged lists are skipped.</p>
+     *
+     * @param others   lists to search
+     * @param executor executor to search on
+     * @return future completed with groups found in each other list that has any, each group starting with an item
+     * of this list followed by similar items of the other list
+     */
+    public CompletableFuture<Map<GroceryList, List<List<GroceryListItem>>>> findDuplicatesIn(
+        List<GroceryList> others, Executor executor) {
+        if (itemList == null) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+
+        var items = new ArrayList<>(itemList);
+        var names = new String[items.size()];
+        for (var i = 0; i < names.length; i++) {
+            names[i] = items.get(i).getName();
+        }
+        var otherItems = new LinkedHashMap<GroceryList, List<GroceryListItem>>();
+        var otherNames = new IdentityHashMap<GroceryListItem, String>();
+        for (var other : others) {
+            if (other != this && other.itemList != null) {
+                otherItems.put(other, new ArrayList<>(other.itemList));
+                other.itemList.forEach(item -> otherNames.put(item, item.getName()));
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            var finder = new DuplicateFinder();
+            for (var i = 0; i < names.length; i++) {
+                finder.add(items.get(i), names[i]);
+            }
+
+            var result = new LinkedHashMap<GroceryList, List<List<GroceryListItem>>>();
+            otherItems.forEach((other, list) -> {
+                // Keyed by this list's item, in list order
+                var groups = new LinkedHashMap<GroceryListItem, List<GroceryListItem>>();
+                for (var item : list) {
+                    for (var similar : finder.findSimilar(otherNames.get(item))) {
+                        groups.computeIfAbsent(similar, k -> new ArrayList<>(List.of(k))).add(item);
+                    }
+                }
+                if (!groups.isEmpty()) {
+                    result.put(other, new ArrayList<>(groups.values()));
+                }
+            });
+            return result;
+        }, executor);
+    }
+
+    /**
+     * Highlight rows of given items as possible duplicates.
+     *
+     * @param groups groups of similar items
+     */
+    public void flagDuplicates(List<List<GroceryListItem>> groups) {
+        groups.forEach(flaggedDuplicates::addAll);
+        refresh();
+    }
+
+    /**
+     * Merge each group of similar items into the first of them in list order, in one batch.
+     *
+     * <p>Amounts are added together, counting items with no amount as one unless none of them has an amount. The
+     * merged item keeps its price, or gets the first price of the others if it has none. Items no longer in the list
+     * are ignored.</p>
+     *
+     * @param groups groups of similar items
+     * @return number of rows removed
+     */
+    public int mergeDuplicates(List<List<GroceryListItem>> groups) {
+        if (itemList == null) {
+            return 0;
+        }
+
+        var indices = new IdentityHashMap<GroceryListItem, Integer>();
+        for (var i = 0; i < itemList.size(); i++) {
+            indices.put(itemList.get(i), i);
+        }
+
+        var removed = new boolean[itemList.size()];
+        var removedCount = new int[1];
+        itemList.batch(() -> {
+            for (var group : groups) {
+                var rows = new ArrayList<Integer>(group.size());
+                for (var item : group) {
+                    var index = indices.get(item);
+                    if (index != null && !removed[index]) {
+                        rows.add(index);
+                    }
+                }
+                if (rows.size() < 2) {
+                    continue;
+                }
+                Collections.sort(rows);
+
+                var kept = itemList.get(rows.get(0));
+                var amount = kept.getAmount();
+                var price = kept.getPricePerUnit();
+                for (var i = 1; i < rows.size(); i++) {
+                    var other = itemList.get(rows.get(i));
+                    if (amount != null || other.getAmount() != null) {
+                        amount = (amount == null ? 1 : amount) + (other.getAmount() == null ? 1 : other.getAmount());
+                    }
+                    if (price == null) {
+                        price = other.getPricePerUnit();
+                    }
+                    removed[rows.get(i)] = true;
+                    removedCount[0]++;
+                }
+                kept.setAmount(amount);
+                kept.setPricePerUnit(price);
+                itemList.updated(rows.get(0));
+                flaggedDuplicates.removeAll(group);
+            }
+
+            for (var i = removed.length - 1; i >= 0; i--) {
+                if (removed[i]) {
+                    itemList.remove(i);
+                }
+            }
+        });
+        refresh();
+        return removedCount[0];
+    }
+
+    /**
+     * Passes changes through, except that a single edited row is passed as replaced, not updated.
+     *
+     * <p>{@link SortedList} sorts the whole list again on updates, but moves replaced rows to their new place with a
+     * binary search. When several rows have changed at once, the rest would be out of place while searching, so they
+     * are passed as updated.</p>
+     */
+    private static class ReplaceUpdates extends TransformationList<GroceryListItem, GroceryListItem> {
+        ReplaceUpdates(ObservableList<GroceryListItem> source) {
+            super(source);
+        }
+
+        @Override
+        protected void sourceChanged(ListChangeListener.Change<? extends GroceryListItem> c) {
+            var changes = 0;
+            var updated = false;
+            while (c.next()) {
+                changes++;
+                updated |= c.wasUpdated();
+            }
+            c.reset();
+            var replace = changes == 1 && updated;
+
+            beginChange();
+            while (c.next()) {
+                var from = c.getFrom();
+                var to = c.getTo();
+                if (c.wasPermutated()) {
+                    var perm = new int[to - from];
+                    for (var i = from; i < to; i++) {
+                        perm[i - from] = c.getPermutation(i);
+                    }
+                    nextPermutation(from, to, perm);
+                } else if (c.wasUpdated()) {
+                    if (replace) {
+                        nextReplace(from, to, new ArrayList<>(c.getList().subList(from, to)));
+                    } else {
+                        for (var i = from; i < to; i++) {
+                            nextUpdate(i);
+                        }
+                    }
+                } else if (c.wasReplaced()) {
+                    nextReplace(from, to, new ArrayList<>(c.getRemoved()));
+                } else if (c.wasRemoved()) {
+                    nextRemove(from, new ArrayList<>(c.getRemoved()));
+                } else {
+                    nextAdd(from, to);
+                }
+            }
+            endChange();
+        }
+
+        @Override
+        public int getSourceIndex(int index) {
+            return index;
+        }
+
+        @Override
+        public int getViewIndex(int index) {
+            return index;
+        }
+
+        @Override
+        public GroceryListItem get(int index) {
+            return getSource().get(index);
+        }
+
+        @Override
+        public int size() {
+            return getSource().size();
+        }
+    }
 }
@@ -1,17 +1,33 @@
 package me.aleksi.grocify;
 
 import java.math.BigDecimal;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Grocery list item containing simple data.
  *
+ * <p>Each item also has an identity that stays the same across edits and saves, and the version it had when its list
+ * was last saved, so concurrent edits to the same list file can be merged row by row.</p>
+ *
  * @author Aleksi Kervinen
  * @version 1.0-SNAPSHOT
  */
 public class GroceryListItem {
+    // Names are sorted by the rules of the user's language
+    private static final Collator COLLATOR = Collator.getInstance();
+
+    private String id;
+    private long version;
     private String name;
     private Integer amount;
     private BigDecimal pricePerUnit;
+    private long contentHash;
+    private boolean contentHashValid;
+    private CollationKey nameKey;
+    private double priceKey = Double.NaN;
+    private long listOrder;
 
     /**
      * Create new grocery list item with given name and no quantity or price.
@@ -35,6 +51,69 @@ public class GroceryListItem {
         this.pricePerUnit = pricePerUnit;
     }
 
+    /**
+     * Create grocery list item with given identity, version, name, quantity and price.
+     *
+     * @param id           item identity, or null to generate one when needed
+     * @param version      version item had when it was last saved, 0 if never
+     * @param name         item name
+     * @param amount       item amount
+     * @param pricePerUnit item price per unit
+     */
+    public GroceryListItem(String id, long version, String name, Integer amount, BigDecimal pricePerUnit) {
+        this(name, amount, pricePerUnit);
+        this.id = id;
+        this.version = version;
+    }
+
+    /**
+     * Create a copy of this item with the same identity and version.
+     *
+     * @return copy of item
+     */
+    public GroceryListItem copy() {
+        return new GroceryListItem(getId(), version, name, amount, pricePerUnit);
+    }
+
+    /**
+     * Get item identity, generating a random one if item has none yet.
+     *
+     * @return item identity
+     */
+    public String getId() {
+        if (id == null) {
+            id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        return id;
+    }
+
+    /**
+     * Whether item has an identity yet, see {@link #getId()}.
+     *
+     * @return true if item has an identity
+     */
+    boolean hasId() {
+        return id != null;
+    }
+
+    /**
+     * Get version item had when its list was last saved.
+     *
+     * @return item version, 0 if item has never been saved
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Set version item has been saved with.
+     *
+     * @param version new item version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Check if item is completely blank.
      *
@@ -62,6 +141,8 @@ public class GroceryListItem {
      */
     public void setName(String name) {
         this.name = name;
+        contentHashValid = false;
+        nameKey = null;
     }
 
     /**
@@ -80,6 +161,7 @@ public class GroceryListItem {
      */
     public void setAmount(Integer amount) {
         this.amount = amount;
+        contentHashValid = false;
     }
 
     /**
@@ -98,5 +180,81 @@ public class GroceryListItem {
      */
     public void setPricePerUnit(BigDecimal pricePerUnit) {
         this.pricePerUnit = pricePerUnit;
+        contentHashValid = false;
+        priceKey = Double.NaN;
+    }
+
+    /**
+     * Get a 64-bit hash of item contents.
+     *
+     * <p>Items with equal name, amount and price always have the same hash. Prices that only differ in scale, like
+     * 1.5 and 1.50, are considered equal.</p>
+     *
+     * @return content hash
+     */
+    long contentHash() {
+        if (!contentHashValid) {
+            var h = 0xcbf29ce484222325L;
+            if (name != null) {
+                for (var i = 0; i < name.length(); i++) {
+                    h = (h ^ name.charAt(i)) * 0x100000001b3L;
+                }
+            }
+            h = mix(h ^ (name == null ? 1 : 2));
+            h = mix(h ^ (amount == null ? 0x5bd1e995L : amount));
+            h = mix(h ^ (pricePerUnit == null ? 0x27d4eb2dL : pricePerUnit.stripTrailingZeros().hashCode()));
+            contentHash = h;
+            contentHashValid = true;
+        }
+        return contentHash;
+    }
+
+    /**
+     * Get collation key of item name, computed once per name so sorting only compares keys.
+     *
+     * @return collation key of name, or of an empty string if item has no name
+     */
+    CollationKey getNameKey() {
+        if (nameKey == null) {
+            nameKey = COLLATOR.getCollationKey(name == null ? "" : name);
+        }
+        return nameKey;
+    }
+
+    /**
+     * Get price per unit as a double for fast comparisons. Prices too close to tell apart as doubles must be compared
+     * exactly.
+     *
+     * @return price as double, or NaN if item has no price
+     */
+    double getPriceKey() {
+        if (Double.isNaN(priceKey) && pricePerUnit != null) {
+            priceKey = pricePerUnit.doubleValue();
+        }
+        return priceKey;
+    }
+
+    /**
+     * Get position of item in its list, for keeping items that sort equal in list order.
+     *
+     * @return list order
+     */
+    long getListOrder() {
+        return listOrder;
+    }
+
+    /**
+     * Set position of item in its list.
+     *
+     * @param listOrder list order, greater than that of items before it
+     */
+    void setListOrder(long listOrder) {
+        this.listOrder = listOrder;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
     }
 }
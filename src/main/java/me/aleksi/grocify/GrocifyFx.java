@@ -1,7 +1,12 @@
 package me.aleksi.grocify;
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
@@ -12,15 +17,19 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.Window;
+import javafx.util.Duration;
 import me.aleksi.jayson.*;
 import net.harawata.appdirs.AppDirsFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -29,7 +38,24 @@ import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * JavaFX interface for Grocify.
@@ -41,10 +67,61 @@ public class GrocifyFx extends Application {
     static final DecimalFormat FORMAT_AMOUNT = new DecimalFormat("#");
     static final DecimalFormat FORMAT_PRICE = new DecimalFormat("#.0");
     private static final String SESSION_FILE_NAME = "session.json";
-    private final FileChooser fileChooser = new FileChooser();
+    private static final String PRICE_CATALOG_FILE_NAME = "prices.json";
+    private static final String SNAPSHOT_FILE_NAME = "session.bin";
+    private static final String SETTINGS_FILE_NAME = "settings.properties";
+    private static final String SETTING_SNAPSHOT = "session.snapshot";
+    private static final Duration SNAPSHOT_INTERVAL = Duration.minutes(1);
+    private static final String SETTING_HIBERNATE = "hibernate.enabled";
+    private static final String SETTING_HIBERNATE_IDLE_MINUTES = "hibernate.idleMinutes";
+    private static final String SETTING_HIBERNATE_MAX_ROWS = "hibernate.maxRows";
+    private static final String SETTING_HIBERNATE_MAX_HEAP_PERCENT = "hibernate.maxHeapPercent";
+    private static final Duration HIBERNATE_INTERVAL = Duration.seconds(10);
+    // Rough heap cost of a row, used to estimate how much hibernating a list frees
+    private static final int ESTIMATED_ROW_BYTES = 200;
+    // Lists hibernated for memory per check, the heap is measured again on the next check before hibernating more
+    private static final int MAX_MEMORY_HIBERNATIONS = 2;
+    private static final String SETTING_PAGING_THRESHOLD_MB = "paging.thresholdMB";
+    private static final String DATABASE_FILE_NAME = "lists";
+    // Prefix of database list names in session file
+    private static final String DATABASE_PREFIX = "db:";
+    private static final String ANALYTICS_FILE_NAME = "analytics.bin";
+    private static final String SETTING_ANALYTICS_DIRECTORY = "analytics.directory";
+    private static final String SETTING_SAVE_ON_EXIT = "exit.saveAll";
+    private static final String SETTING_FILL_PRICES = "prices.fillOnOpen";
+    private static final String SETTING_SYNC = "sync.enabled";
+    private static final String SETTING_SYNC_PORT = "sync.port";
+    private static final String SETTING_SYNC_PEERS = "sync.peers";
+    // Saving is mostly waiting for the disk, more threads than this just compete for it
+    private static final int SAVE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
     private final TabPane tabPane = new TabPane();
+    private final PriceCatalog priceCatalog = new PriceCatalog(getDataPath().resolve(PRICE_CATALOG_FILE_NAME));
+    private final Settings settings = new Settings(getDataPath().resolve(SETTINGS_FILE_NAME));
+    private final JsonListStorage jsonStorage = new JsonListStorage();
+    private final DatabaseListStorage database = new DatabaseListStorage(getDataPath().resolve(DATABASE_FILE_NAME));
+    private final AnalyticsIndex analyticsIndex = new AnalyticsIndex(getDataPath().resolve(ANALYTICS_FILE_NAME));
+    private final SyncService sync = new SyncService();
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "Grocify background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService saveExecutor = Executors.newFixedThreadPool(SAVE_THREADS, r -> {
+        var thread = new Thread(r, "Grocify save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Label statusLabel = new Label();
+    private final Label duplicateLabel = new Label();
+    private FileChooser fileChooser;
     private Window fileChooserOwnerWindow;
+    private Pane newItemBox;
+    private Pane duplicateBox;
+    private List<GroceryListItem> duplicateGroup;
     private GroceryList currentList;
+    private int hibernateCount;
+    private long snapshotSessionHash;
+    private AnalyticsView analyticsView;
 
     /**
      * <p>main.</p>
@@ -75,15 +152,38 @@ public class GrocifyFx extends Application {
         });
     }
 
-    private void loadSettings() {
+    private static Path getDataPath() {
+        // Lets several instances run side by side, e.g. to try out syncing
+        var dataDir = System.getProperty("grocify.dataDir");
+        if (dataDir != null) {
+            return Path.of(dataDir);
+        }
         var appDirs = AppDirsFactory.getInstance();
-        var dataPath = appDirs.getUserDataDir("Grocify", null, null, false);
+        return Path.of(appDirs.getUserDataDir("Grocify", null, null, false));
+    }
+
+    private void loadSettings() {
+        try {
+            priceCatalog.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // Snapshot has everything session.json has, and more
+        if (settings.getBoolean(SETTING_SNAPSHOT, true) && restoreSnapshot()) {
+            return;
+        }
 
         try {
-            var res = new JSONReader().parse(Files.readString(Path.of(dataPath, SESSION_FILE_NAME), StandardCharsets.UTF_8));
+            var res = new JSONReader().parse(Files.readString(getDataPath().resolve(SESSION_FILE_NAME), StandardCharsets.UTF_8));
 
             for (var e : res.getArray()) {
-                loadFile(new File(e.getString()), false);
+                var path = e.getString();
+                if (path.startsWith(DATABASE_PREFIX)) {
+                    loadDatabaseList(path.substring(DATABASE_PREFIX.length()), false);
+                } else {
+                    loadFile(new File(path), false);
+                }
             }
         } catch (NoSuchFileException e) {
             // Ignore this one, it's normal
@@ -93,21 +193,58 @@ public class GrocifyFx extends Application {
     }
 
     private void saveSettings() {
-        var appDirs = AppDirsFactory.getInstance();
+        writeSessionFile();
+
+        try {
+            priceCatalog.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            settings.save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (settings.getBoolean(SETTING_SNAPSHOT, true)) {
+            // Wait for possible periodic snapshot to finish first
+            try {
+                writeSnapshot().get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        } else {
+            try {
+                Files.deleteIfExists(getDataPath().resolve(SNAPSHOT_FILE_NAME));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
+        database.close();
+    }
+
+    /**
+     * Write list of open files to session file.
+     */
+    private void writeSessionFile() {
         var arr = new JSONArray();
         for (var tab : tabPane.getTabs()) {
-            var list = (GroceryList) tab.getContent();
+            var listTab = (ListTab) tab;
+            var file = listTab.getFile();
 
-            if (list.getFile() != null) {
-                arr.add(list.getFile().getPath());
+            if (file != null) {
+                arr.add(file.getPath());
+            } else if (listTab.getList() != null && listTab.getList().getStorage() == database) {
+                arr.add(DATABASE_PREFIX + listTab.getList().getName());
             }
         }
 
-        var dataPath = appDirs.getUserDataDir("Grocify", null, null, false);
+        var dataPath = getDataPath();
         //noinspection ResultOfMethodCallIgnored
-        new File(dataPath).mkdirs();
-        try (var writer = new PrintWriter(Path.of(dataPath, SESSION_FILE_NAME).toFile(), StandardCharsets.UTF_8)) {
+        dataPath.toFile().mkdirs();
+        try (var writer = new PrintWriter(dataPath.resolve(SESSION_FILE_NAME).toFile(), StandardCharsets.UTF_8)) {
             writer.write(arr.toJSONString());
         } catch (IOException e) {
             // "Silently" ignore since user probably doesn't care or cannot do anything about this.
@@ -115,6 +252,131 @@ public class GrocifyFx extends Application {
         }
     }
 
+    private SessionSnapshot captureSnapshot() {
+        var entries = new ArrayList<SessionSnapshot.Entry>();
+        var selectedIndex = -1;
+        for (var tab : tabPane.getTabs()) {
+            var listTab = (ListTab) tab;
+            var list = listTab.getList();
+            if (listTab.getFile() == null) {
+                if (list != null && list.getStorage() == database) {
+                    if (tab.isSelected()) {
+                        selectedIndex = entries.size();
+                    }
+                    entries.add(SessionSnapshot.Entry.database(list.getName()));
+                }
+                continue;
+            }
+            if (tab.isSelected()) {
+                selectedIndex = entries.size();
+            }
+
+            if (list == null || list.getPagedItems() != null) {
+                // Hibernated or paged, read again on restore
+                entries.add(new SessionSnapshot.Entry(listTab.getFile(), 0, 0, listTab.getScrollIndex(), "",
+                    null));
+                continue;
+            }
+
+            // Dirty lists don't match their files, leave them to be read again on restore
+            List<GroceryListItem> items = null;
+            if (!list.isDirty()) {
+                items = new ArrayList<>(list.getData().size());
+                for (var item : list.getData()) {
+                    items.add(item.copy());
+                }
+            }
+            entries.add(new SessionSnapshot.Entry(list.getFile(), list.getFileLastModified(), list.getFileSize(),
+                list.getFirstVisibleIndex(), list.getSortOrderString(), items));
+        }
+        return new SessionSnapshot(entries, selectedIndex);
+    }
+
+    /**
+     * Get hash of everything a snapshot holds, without copying any rows.
+     */
+    private long getSessionHash() {
+        var hash = 1L;
+        for (var tab : tabPane.getTabs()) {
+            var listTab = (ListTab) tab;
+            var list = listTab.getList();
+            hash = hash * 31 + Objects.hashCode(listTab.getFile());
+            hash = hash * 31 + listTab.getScrollIndex();
+            hash = hash * 31 + (tab.isSelected() ? 1 : 0);
+            if (list != null) {
+                hash = hash * 31 + list.getContentHash();
+                hash = hash * 31 + list.getFileLastModified();
+                hash = hash * 31 + (list.isDirty() ? 1 : 2);
+                hash = hash * 31 + Objects.hashCode(list.getStorage() == database ? list.getName() : null);
+            }
+        }
+        return hash;
+    }
+
+    private Future<?> writeSnapshot() {
+        snapshotSessionHash = getSessionHash();
+        var snapshot = captureSnapshot();
+        return backgroundExecutor.submit(() -> {
+            try {
+                snapshot.write(getDataPath().resolve(SNAPSHOT_FILE_NAME));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private boolean restoreSnapshot() {
+        SessionSnapshot snapshot;
+        try {
+            snapshot = SessionSnapshot.read(getDataPath().resolve(SNAPSHOT_FILE_NAME));
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        var tabs = new ArrayList<ListTab>();
+        for (var entry : snapshot.getEntries()) {
+            var scrollIndex = entry.getScrollIndex();
+            var items = entry.getItemsIfCurrent();
+            if (items != null) {
+                var list = createList(entry.getFile(), items, entry.getSortOrder());
+                tabs.add(addTab(list));
+                Platform.runLater(() -> list.scrollTo(scrollIndex));
+                continue;
+            }
+
+            // Database list, or file has changed since. Large files get their tab now and are read in the background.
+            var tabCount = tabPane.getTabs().size();
+            if (entry.getDatabaseList() != null) {
+                loadDatabaseList(entry.getDatabaseList(), false);
+            } else {
+                loadFile(entry.getFile(), false);
+            }
+            if (tabPane.getTabs().size() == tabCount) {
+                tabs.add(null);
+                continue;
+            }
+            var tab = (ListTab) tabPane.getTabs().get(tabCount);
+            tabs.add(tab);
+
+            var list = tab.getList();
+            if (list == null) {
+                // Still being read, scrolled once it's shown
+                tab.setScrollIndex(scrollIndex);
+            } else {
+                Platform.runLater(() -> list.scrollTo(scrollIndex));
+            }
+        }
+
+        var selectedIndex = snapshot.getSelectedIndex();
+        if (selectedIndex >= 0 && selectedIndex < tabs.size() && tabs.get(selectedIndex) != null) {
+            tabPane.getSelectionModel().select(tabs.get(selectedIndex));
+        }
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -122,30 +384,57 @@ public class GrocifyFx extends Application {
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Grocify");
 
-        var extFilter = new FileChooser.ExtensionFilter("JSON file (*.json)", "*.json");
-        fileChooser.getExtensionFilters().add(extFilter);
-        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        // Needed by menus, so load before the rest of the session
+        try {
+            settings.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         fileChooserOwnerWindow = primaryStage;
 
         var menuBar = buildMenuBar();
         menuBar.setUseSystemMenuBar(true);
 
-        var addBox = buildNewItemBox();
-        addBox.prefWidthProperty().bind(primaryStage.widthProperty());
+        newItemBox = buildNewItemBox();
+        newItemBox.prefWidthProperty().bind(primaryStage.widthProperty());
+        duplicateBox = buildDuplicateBox();
 
         tabPane.getStyleClass().add("floating");
         tabPane.getSelectionModel().selectedItemProperty().addListener((ov, oldVal, newVal) -> {
-            if (newVal == null) {
-                currentList = null;
-            } else {
-                currentList = (GroceryList) newVal.getContent();
+            if (oldVal != null) {
+                ((ListTab) oldVal).touch();
+            }
+            selectTab((ListTab) newVal);
+        });
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) c -> {
+            while (c.next()) {
+                for (var tab : c.getRemoved()) {
+                    var list = ((ListTab) tab).getList();
+                    if (list != null) {
+                        sync.detach(list);
+                    }
+                }
             }
-            addBox.getChildren().get(addBox.getChildren().size() - 1).setDisable(newVal == null);
         });
 
         // Load previous session
         loadSettings();
 
+        var snapshotTimeline = new Timeline(new KeyFrame(SNAPSHOT_INTERVAL, e -> {
+            // Nothing to write if no list has changed since the last snapshot
+            if (settings.getBoolean(SETTING_SNAPSHOT, true) && getSessionHash() != snapshotSessionHash) {
+                writeSnapshot();
+            }
+        }));
+        snapshotTimeline.setCycleCount(Timeline.INDEFINITE);
+        snapshotTimeline.play();
+
+        var hibernateTimeline = new Timeline(new KeyFrame(HIBERNATE_INTERVAL, e -> hibernateTabs()));
+        hibernateTimeline.setCycleCount(Timeline.INDEFINITE);
+        hibernateTimeline.play();
+        hibernateTabs();
+
         // Add an empty tab if none were loaded from last session
         if (tabPane.getTabs().size() == 0) {
             addEmptyTab();
@@ -158,7 +447,7 @@ public class GrocifyFx extends Application {
         content.setPadding(new Insets(0, 5, 10, 5));
 
         root.getChildren().addAll(menuBar, content);
-        content.getChildren().addAll(tabPane, addBox);
+        content.getChildren().addAll(tabPane, newItemBox, duplicateBox, statusLabel);
 
         VBox.setVgrow(content, Priority.ALWAYS);
         VBox.setVgrow(tabPane, Priority.ALWAYS);
@@ -166,25 +455,34 @@ public class GrocifyFx extends Application {
         var scene = new Scene(root, 480, 640);
         primaryStage.setScene(scene);
 
-        primaryStage.setOnCloseRequest(e -> {
-            var dirty = false;
-            for (var tab : tabPane.getTabs()) {
-                if (((GroceryList) tab.getContent()).isDirty()) {
-                    dirty = true;
-                    break;
-                }
+        // Work that isn't needed for the first frame waits until it has been drawn
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                Platform.runLater(() -> {
+                    StartupTiming.firstFrame();
+                    startDeferred();
+                    // Runs once deferred work has been handled and the window can take input
+                    Platform.runLater(StartupTiming::interactive);
+                });
             }
+        });
 
-            if (dirty && !confirmCloseApp()) {
+        primaryStage.setOnCloseRequest(e -> {
+            if (hasDirtyTabs() && settings.getBoolean(SETTING_SAVE_ON_EXIT, false)) {
+                // Quit once everything is saved, or ask as usual if something couldn't be
+                e.consume();
+                saveAll().thenAccept(saved -> {
+                    if (!hasDirtyTabs() || confirmCloseApp()) {
+                        quit();
+                        primaryStage.close();
+                    }
+                });
+            } else if (hasDirtyTabs() && !confirmCloseApp()) {
                 e.consume();
             } else {
-                // Save session before quitting
-                try {
-                    saveSettings();
-                } catch (Exception ex) {
-                    // Ignore exceptions so we can quit.
-                    ex.printStackTrace();
-                }
+                quit();
             }
         });
 
@@ -193,8 +491,7 @@ public class GrocifyFx extends Application {
             if (e.getGestureSource() != this && e.getDragboard().hasFiles()) {
                 if (e.getDragboard().getFiles().size() == 1) {
                     var first = e.getDragboard().getFiles().get(0);
-                    var extIdx = first.getName().lastIndexOf('.');
-                    if (extIdx != -1 && first.getName().substring(extIdx).equals(".json")) {
+                    if (JsonListFormat.isListFile(first.getName())) {
                         e.acceptTransferModes(TransferMode.COPY);
                     }
                 }
@@ -215,32 +512,241 @@ public class GrocifyFx extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Start work deferred until after the first frame.
+     */
+    private void startDeferred() {
+        if (settings.getBoolean(SETTING_SYNC, false)) {
+            startSync();
+        }
+
+        // Bring analytics up to date in the background, so they're ready when opened
+        CompletableFuture.runAsync(() -> {
+            try {
+                analyticsIndex.load();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }).thenRun(this::scanAnalytics);
+    }
+
+    /**
+     * Get file chooser for list files, setting it up on first use.
+     *
+     * @return list file chooser
+     */
+    private FileChooser getFileChooser() {
+        if (fileChooser == null) {
+            fileChooser = new FileChooser();
+            fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("List file (*.json, *.json.gz, *.json.lz4)",
+                    "*.json", "*.json.gz", "*.json.lz4"),
+                new FileChooser.ExtensionFilter("JSON file (*.json)", "*.json"),
+                new FileChooser.ExtensionFilter("Compressed JSON file (*.json.gz)", "*.json.gz"),
+                new FileChooser.ExtensionFilter("Fast compressed JSON file (*.json.lz4)", "*.json.lz4"));
+            fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        }
+        return fileChooser;
+    }
+
+    private void quit() {
+        sync.stop();
+
+        // Save session before quitting
+        try {
+            saveSettings();
+        } catch (Exception ex) {
+            // Ignore exceptions so we can quit.
+            ex.printStackTrace();
+        }
+    }
+
+    private boolean hasDirtyTabs() {
+        for (var tab : tabPane.getTabs()) {
+            if (((ListTab) tab).isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void addEmptyTab() {
-        addTab(new GroceryList());
+        var list = new GroceryList();
+        list.setPriceCatalog(priceCatalog);
+        addTab(list);
+    }
+
+    private ListTab addTab(GroceryList list) {
+        var tab = new ListTab(list);
+        addTab(tab);
+        sync.attach(list);
+        return tab;
     }
 
-    private Tab addTab(GroceryList list) {
-        var tab = new Tab(list.getName(), list);
+    private void addTab(ListTab tab) {
         tabPane.getTabs().add(tab);
         tabPane.getSelectionModel().select(tab);
 
-        list.dirtyProperty().addListener((ov, oldVal, newVal) -> {
-            if (newVal) {
-                tab.setText("*" + list.getName());
-            } else {
-                tab.setText(list.getName());
+        tab.setOnCloseRequest(e -> {
+            if (tab.isDirty()) {
+                if (!confirmCloseTab(tab)) {
+                    e.consume();
+                }
             }
         });
+    }
 
-        tab.setOnCloseRequest(e -> {
-            if (list.isDirty()) {
-                if (!confirmCloseTab()) {
-                    e.consume();
+    private GroceryList createList(File file, List<GroceryListItem> items, String sortOrder) {
+        var list = new GroceryList(getBaseName(file));
+        list.setPriceCatalog(priceCatalog);
+        list.getData().addAll(items);
+        list.setSortOrderString(sortOrder);
+        list.setFile(file);
+        list.updateFileStamp();
+        list.setMergeBase(ListMerge.Base.of(list.getData()));
+        list.setDirty(false);
+        return list;
+    }
+
+    private void selectTab(ListTab tab) {
+        if (currentList != null) {
+            currentList.setOnDuplicatesFound(null);
+        }
+        currentList = tab == null ? null : tab.getList();
+        hideDuplicates();
+        if (currentList != null) {
+            currentList.setOnDuplicatesFound(this::showDuplicates);
+        }
+        if (tab != null) {
+            tab.touch();
+            if (tab.isHibernated()) {
+                restoreTab(tab);
+            }
+        }
+        newItemBox.getChildren().get(newItemBox.getChildren().size() - 1).setDisable(currentList == null);
+    }
+
+    private void restoreTab(ListTab tab) {
+        restoreTab(tab, false);
+    }
+
+    /**
+     * Read list of a hibernated or newly opened tab in the background and show it in the tab.
+     *
+     * @param showDialogOnError if true, tab is closed and an error dialog shown if list cannot be read
+     */
+    private void restoreTab(ListTab tab, boolean showDialogOnError) {
+        if (!tab.startRestore()) {
+            return;
+        }
+
+        var file = tab.getFile();
+        backgroundExecutor.submit(() -> {
+            try {
+                Supplier<GroceryList> listCreator;
+                if (isPagedFile(file)) {
+                    var items = PagedItems.open(file);
+                    listCreator = () -> createPagedList(file, items);
+                } else {
+                    var listFile = jsonStorage.readList(file.getPath());
+                    listCreator = () -> createList(file, listFile.getItems(), listFile.getSortOrder());
                 }
+                Platform.runLater(() -> {
+                    // Closed while it was being read
+                    if (!tabPane.getTabs().contains(tab)) {
+                        return;
+                    }
+                    var scrollIndex = tab.getScrollIndex();
+                    var list = listCreator.get();
+                    tab.setList(list);
+                    sync.attach(list);
+                    list.scrollTo(scrollIndex);
+                    if (tab.isSelected()) {
+                        selectTab(tab);
+                    }
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    if (showDialogOnError) {
+                        tabPane.getTabs().remove(tab);
+                        showReadError(e);
+                    } else {
+                        tab.restoreFailed(e.getMessage());
+                    }
+                });
             }
         });
+    }
 
-        return tab;
+    /**
+     * Hibernate least recently viewed tabs that have been idle for too long, or while over memory budget.
+     */
+    private void hibernateTabs() {
+        var runtime = Runtime.getRuntime();
+        var heapUsed = getHeapUsedAfterGc();
+        var heapBudget = runtime.maxMemory() / 100 * settings.getInt(SETTING_HIBERNATE_MAX_HEAP_PERCENT, 75);
+        var rowBudget = settings.getInt(SETTING_HIBERNATE_MAX_ROWS, 500_000);
+        var idleSince = System.currentTimeMillis() - settings.getInt(SETTING_HIBERNATE_IDLE_MINUTES, 10) * 60_000L;
+
+        var liveRows = 0L;
+        var hibernated = 0;
+        var candidates = new ArrayList<ListTab>();
+        for (var tab : tabPane.getTabs()) {
+            var listTab = (ListTab) tab;
+            if (listTab.isHibernated()) {
+                hibernated++;
+                continue;
+            }
+            liveRows += listTab.getLoadedRowCount();
+            // Synced lists need to stay open to receive changes
+            if (listTab.canHibernate() && !listTab.isSelected() && !sync.isAttached(listTab.getList())) {
+                candidates.add(listTab);
+            }
+        }
+
+        if (settings.getBoolean(SETTING_HIBERNATE, true)) {
+            candidates.sort(Comparator.comparingLong(ListTab::getLastViewed));
+            var excessBytes = heapUsed - heapBudget;
+            var memoryHibernations = 0;
+            for (var tab : candidates) {
+                if (tab.getLastViewed() > idleSince && liveRows <= rowBudget) {
+                    // Rest of the candidates have been viewed even more recently
+                    if (excessBytes <= 0 || memoryHibernations == MAX_MEMORY_HIBERNATIONS) {
+                        break;
+                    }
+                    memoryHibernations++;
+                }
+                liveRows -= tab.getRowCount();
+                excessBytes -= (long) tab.getRowCount() * ESTIMATED_ROW_BYTES;
+                tab.hibernate();
+                hibernated++;
+                hibernateCount++;
+            }
+        }
+
+        statusLabel.setText(String.format("Memory %d / %d MB, %d / %d rows loaded, %d of %d lists hibernated (%d total)",
+            heapUsed >> 20, heapBudget >> 20, liveRows, rowBudget, hibernated, tabPane.getTabs().size(),
+            hibernateCount));
+    }
+
+    /**
+     * Get heap used after the last garbage collection, which unlike the current heap use doesn't count garbage that
+     * hasn't been collected yet. Falls back to current heap use if the JVM doesn't report it.
+     */
+    private static long getHeapUsedAfterGc() {
+        var used = 0L;
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            var usage = pool.getCollectionUsage();
+            if (usage == null) {
+                var runtime = Runtime.getRuntime();
+                return runtime.totalMemory() - runtime.freeMemory();
+            }
+            used += usage.getUsed();
+        }
+        return used;
     }
 
     private MenuBar buildMenuBar() {
@@ -260,9 +766,73 @@ public class GrocifyFx extends Application {
 
         menuNew.setOnAction(e -> actionFileNew());
         menuOpen.setOnAction(e -> actionFileOpen());
+        var menuSaveAll = new MenuItem("Save A_ll");
+        var menuCloseAll = new MenuItem("_Close All");
+
+        menuSaveAll.setAccelerator(new KeyCodeCombination(KeyCode.S, KeyCombination.CONTROL_DOWN, KeyCombination.ALT_DOWN));
+
         menuSave.setOnAction(e -> actionFileSave());
         menuSaveAs.setOnAction(e -> actionFileSaveAs());
-        fileMenu.getItems().addAll(menuNew, menuOpen, menuSave, menuSaveAs);
+        menuSaveAll.setOnAction(e -> saveAll());
+        menuCloseAll.setOnAction(e -> actionFileCloseAll());
+        var menuDatabaseOpen = new MenuItem("Open from _Database…");
+        var menuDatabaseSave = new MenuItem("Save to Data_base");
+
+        menuDatabaseOpen.setOnAction(e -> actionDatabaseOpen());
+        menuDatabaseSave.setOnAction(e -> actionDatabaseSave());
+
+        fileMenu.getItems().addAll(menuNew, menuOpen, menuSave, menuSaveAs, menuSaveAll, menuCloseAll,
+            new SeparatorMenuItem(), menuDatabaseOpen, menuDatabaseSave);
+
+        final var listMenu = new Menu("_List");
+
+        var menuReprice = new MenuItem("_Reprice from Catalog");
+        var menuSpending = new MenuItem("Search _Spending…");
+
+        menuReprice.setOnAction(e -> actionListReprice());
+        var menuAnalytics = new MenuItem("Spending _Analytics…");
+        var menuDuplicates = new MenuItem("Find _Duplicates…");
+
+        menuSpending.setOnAction(e -> actionListSpending());
+        menuAnalytics.setOnAction(e -> actionListAnalytics());
+        menuDuplicates.setOnAction(e -> actionListDuplicates());
+
+        listMenu.getItems().addAll(menuReprice, menuDuplicates, menuSpending, menuAnalytics);
+
+        final var optionsMenu = new Menu("_Options");
+
+        var menuSnapshot = new CheckMenuItem("Keep Session _Snapshot");
+        var menuHibernate = new CheckMenuItem("_Hibernate Idle Lists");
+        var menuSaveOnExit = new CheckMenuItem("Save All on E_xit");
+        var menuFillPrices = new CheckMenuItem("Fill In _Missing Prices on Open");
+        var menuAnalyticsFolder = new MenuItem("Analytics _Folder…");
+        var menuSync = new CheckMenuItem("LAN S_ync");
+        var menuSyncPeers = new MenuItem("Sync _Peers…");
+
+        menuSnapshot.setSelected(settings.getBoolean(SETTING_SNAPSHOT, true));
+        menuHibernate.setSelected(settings.getBoolean(SETTING_HIBERNATE, true));
+
+        menuSnapshot.setOnAction(e -> settings.setBoolean(SETTING_SNAPSHOT, menuSnapshot.isSelected()));
+        menuHibernate.setOnAction(e -> settings.setBoolean(SETTING_HIBERNATE, menuHibernate.isSelected()));
+        menuSaveOnExit.setSelected(settings.getBoolean(SETTING_SAVE_ON_EXIT, false));
+        menuSaveOnExit.setOnAction(e -> settings.setBoolean(SETTING_SAVE_ON_EXIT, menuSaveOnExit.isSelected()));
+        menuFillPrices.setSelected(settings.getBoolean(SETTING_FILL_PRICES, false));
+        menuFillPrices.setOnAction(e -> settings.setBoolean(SETTING_FILL_PRICES, menuFillPrices.isSelected()));
+        menuAnalyticsFolder.setOnAction(e -> chooseAnalyticsDirectory());
+        menuSync.setSelected(settings.getBoolean(SETTING_SYNC, false));
+        menuSync.setOnAction(e -> {
+            settings.setBoolean(SETTING_SYNC, menuSync.isSelected());
+            if (menuSync.isSelected()) {
+                startSync();
+            } else {
+                sync.stop();
+                statusLabel.setText("Sync stopped");
+            }
+        });
+        menuSyncPeers.setOnAction(e -> actionSyncPeers());
+
+        optionsMenu.getItems().addAll(menuSnapshot, menuHibernate, menuSaveOnExit, menuFillPrices,
+            new SeparatorMenuItem(), menuAnalyticsFolder, new SeparatorMenuItem(), menuSync, menuSyncPeers);
 
         final var helpMenu = new Menu("_Help");
 
@@ -275,7 +845,7 @@ public class GrocifyFx extends Application {
         menuHelp.setAccelerator(new KeyCodeCombination(KeyCode.F1));
 
         helpMenu.getItems().addAll(menuHelp, menuAbout);
-        menuBar.getMenus().addAll(fileMenu, helpMenu);
+        menuBar.getMenus().addAll(fileMenu, listMenu, optionsMenu, helpMenu);
 
         return menuBar;
     }
@@ -300,6 +870,17 @@ public class GrocifyFx extends Application {
         addAmount.setTextFormatter(getFormatter(FORMAT_AMOUNT));
         addPrice.setTextFormatter(getFormatter(FORMAT_PRICE));
 
+        // Fill in last known price, unless user has typed their own
+        addName.textProperty().addListener((ov, oldVal, newVal) -> {
+            if (addPrice.getLength() > 0 && !addPrice.getText().equals(addPrice.getUserData())) {
+                return;
+            }
+            var price = priceCatalog.lookup(newVal);
+            var text = price == null ? "" : price.toPlainString();
+            addPrice.setText(text);
+            addPrice.setUserData(text);
+        });
+
         addButton.setOnAction(e -> {
             var name = addName.getText();
             if (name.isBlank()) {
@@ -313,12 +894,15 @@ public class GrocifyFx extends Application {
                 // Should never come here if TextFormatter works right
             }
             var price = addPrice.getLength() > 0 ? new BigDecimal(addPrice.getText()) : null;
-            currentList.getItems().add(new GroceryListItem(name, amount, price));
-            currentList.setDirty(true);
+            var item = new GroceryListItem(name, amount, price);
+            currentList.getData().add(item);
+            currentList.checkDuplicates(item);
+            priceCatalog.record(name, price);
 
             addName.clear();
             addAmount.clear();
             addPrice.clear();
+            addPrice.setUserData(null);
         });
 
         addBox.getChildren().addAll(addName, addAmount, addPrice, addButton);
@@ -327,12 +911,48 @@ public class GrocifyFx extends Application {
         return addBox;
     }
 
+    private Pane buildDuplicateBox() {
+        var mergeButton = new Button("Merge");
+        var ignoreButton = new Button("Ignore");
+
+        mergeButton.setOnAction(e -> {
+            if (currentList != null && duplicateGroup != null) {
+                currentList.mergeDuplicates(List.of(duplicateGroup));
+            }
+            hideDuplicates();
+        });
+        ignoreButton.setOnAction(e -> hideDuplicates());
+
+        duplicateLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(duplicateLabel, Priority.ALWAYS);
+
+        var box = new HBox(duplicateLabel, mergeButton, ignoreButton);
+        box.setSpacing(3);
+        box.setAlignment(Pos.CENTER_LEFT);
+        box.setVisible(false);
+        box.managedProperty().bind(box.visibleProperty());
+        return box;
+    }
+
+    private void showDuplicates(List<GroceryListItem> group) {
+        duplicateGroup = group;
+        var others = group.size() - 1;
+        duplicateLabel.setText("\"" + group.get(0).getName() + "\" looks like a duplicate of \""
+            + group.get(1).getName() + "\"" + (others > 1 ? " and " + (others - 1) + " more" : ""));
+        duplicateBox.setVisible(true);
+    }
+
+    private void hideDuplicates() {
+        duplicateGroup = null;
+        duplicateBox.setVisible(false);
+    }
+
     private void actionFileNew() {
         addEmptyTab();
     }
 
     private void actionFileOpen() {
-        var file = fileChooser.showOpenDialog(fileChooserOwnerWindow);
+        var file = getFileChooser().showOpenDialog(fileChooserOwnerWindow);
         if (file != null) {
             loadFile(file, true);
         }
@@ -341,79 +961,553 @@ public class GrocifyFx extends Application {
     private void actionFileSave() {
         if (currentList == null) return;
 
-        var file = currentList.getFile();
+        saveList(currentList);
+    }
+
+    private void actionFileSaveAs() {
+        if (currentList == null) return;
+
+        saveListAs(currentList);
+    }
+
+    private void actionFileCloseAll() {
+        if (hasDirtyTabs()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("Do you want to save the changes you made before closing all lists?");
+            alert.setContentText("Your changes will be lost if you don't save them.");
+
+            ButtonType btnSave = new ButtonType("Save All");
+            ButtonType btnNoSave = new ButtonType("Don't save");
+            ButtonType btnCancel = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
+
+            alert.getButtonTypes().setAll(btnSave, btnNoSave, btnCancel);
+
+            Optional<ButtonType> result = alert.showAndWait();
+            if (result.isEmpty() || result.get() == btnCancel) {
+                return;
+            }
+            if (result.get() == btnSave) {
+                // Lists that couldn't be saved are left open
+                saveAll().thenAccept(saved -> closeTabs(false));
+                return;
+            }
+        }
+        closeTabs(true);
+    }
+
+    private void closeTabs(boolean discardChanges) {
+        tabPane.getTabs().removeIf(tab -> discardChanges || !((ListTab) tab).isDirty());
+        if (tabPane.getTabs().isEmpty()) {
+            addEmptyTab();
+        }
+        writeSessionFile();
+    }
+
+    /**
+     * Save all dirty lists in parallel on a bounded pool, then update session and report errors once.
+     *
+     * <p>Untitled lists are asked a file name for first. Lists are copied on the FX thread and written in the
+     * background, except for paged lists, which are written on the FX thread since their pages are read there.</p>
+     *
+     * @return future completed on the FX thread with true if all dirty lists were saved
+     */
+    private CompletableFuture<Boolean> saveAll() {
+        var errors = new ArrayList<String>();
+        var jobs = new ArrayList<SaveJob>();
+        for (var tab : new ArrayList<>(tabPane.getTabs())) {
+            var list = ((ListTab) tab).getList();
+            // Hibernated lists are never dirty
+            if (list == null || !list.isDirty()) {
+                continue;
+            }
+
+            if (list.getFile() == null && list.getStorage() == null) {
+                // Left dirty if user cancels
+                tabPane.getSelectionModel().select(tab);
+                saveListAs(list);
+                continue;
+            }
+            try {
+                jobs.add(new SaveJob(list));
+            } catch (IOException e) {
+                errors.add(list.getName() + ": " + e.getMessage());
+            }
+        }
+
+        var count = jobs.size();
+        statusLabel.setText("Saving " + count + " lists…");
+        var futures = jobs.stream()
+            .map(job -> CompletableFuture.runAsync(job::write, saveExecutor))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures).thenApplyAsync(v -> {
+            var saved = 0;
+            var conflicts = 0;
+            for (var job : jobs) {
+                if (job.error == null) {
+                    try {
+                        job.finish();
+                        saved++;
+                        conflicts += job.result == null ? 0 : job.result.getConflicts();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        errors.add(job.list.getName() + ": " + e);
+                    }
+                } else {
+                    errors.add(job.list.getName() + ": " + job.error.getMessage());
+                }
+            }
+            writeSessionFile();
+            if (settings.getBoolean(SETTING_SNAPSHOT, true)) {
+                writeSnapshot();
+            }
+
+            statusLabel.setText("Saved " + saved + " lists"
+                + (conflicts > 0 ? ", " + conflicts + " rows also edited by others kept as edited here" : ""));
+            if (!errors.isEmpty()) {
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Grocify");
+                alert.setHeaderText(errors.size() + " lists could not be saved");
+                alert.setContentText(String.join("\n", errors));
+                alert.showAndWait();
+            }
+            return errors.isEmpty();
+        }, Platform::runLater);
+    }
+
+    /**
+     * Save list to its file or storage, asking a file name for untitled lists.
+     *
+     * @param list list to save
+     * @return true if list was saved
+     */
+    private boolean saveList(GroceryList list) {
+        if (list.getStorage() != null) {
+            if (saveToStorage(list)) {
+                list.setDirty(false);
+                return true;
+            }
+            return false;
+        }
+
+        var file = list.getFile();
         if (file == null) {
-            actionFileSaveAs();
+            return saveListAs(list);
+        }
+        if (saveToFile(list, file)) {
+            list.setDirty(false);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean saveListAs(GroceryList list) {
+        var chooser = getFileChooser();
+        chooser.setInitialFileName(list.getName());
+        if (list.getFile() != null) {
+            chooser.setInitialDirectory(list.getFile().getParentFile());
+        }
+        var file = chooser.showSaveDialog(fileChooserOwnerWindow);
+        if (file == null || !saveToFile(list, file)) {
+            return false;
+        }
+
+        list.setFile(file);
+        // Saved lists are kept in the chosen file from now on, not in the database
+        list.setStorage(null, null);
+        var name = getBaseName(file);
+        list.setName(name);
+        sync.renamed(list);
+        list.setDirty(false);
+        for (var tab : tabPane.getTabs()) {
+            if (((ListTab) tab).getList() == list) {
+                tab.setText(name);
+            }
+        }
+        return true;
+    }
+
+    private void actionDatabaseOpen() {
+        List<String> names;
+        try {
+            names = database.listNames();
+        } catch (IOException e) {
+            showError("Error reading list database", e);
             return;
         }
-        if (saveToFile(file)) {
-            currentList.setDirty(false);
+        if (names.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("There are no lists in the database yet.");
+            alert.setContentText("Use File > Save to Database to add lists to it.");
+            alert.show();
+            return;
         }
+
+        var dialog = new ChoiceDialog<>(names.get(0), names);
+        dialog.setTitle("Grocify");
+        dialog.setHeaderText("Open list from database");
+        dialog.showAndWait().ifPresent(name -> loadDatabaseList(name, true));
     }
 
-    private void actionFileSaveAs() {
+    private void actionDatabaseSave() {
         if (currentList == null) return;
 
-        fileChooser.setInitialFileName(currentList.getName());
-        if (currentList.getFile() != null) {
-            fileChooser.setInitialDirectory(currentList.getFile().getParentFile());
+        if (currentList.getPagedItems() != null) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("This list is too large to save to the database.");
+            alert.show();
+            return;
         }
-        var file = fileChooser.showSaveDialog(fileChooserOwnerWindow);
-        if (file != null) {
-            if (saveToFile(file)) {
-                currentList.setFile(file);
-                var name = getBaseName(file);
-                currentList.setName(name);
+
+        if (currentList.getStorage() == database) {
+            if (saveToStorage(currentList)) {
                 currentList.setDirty(false);
-                tabPane.getSelectionModel().getSelectedItem().setText(name);
             }
+            return;
+        }
+
+        var list = currentList;
+        try {
+            // Lists are kept under their id, so another list with the same name is only replaced if asked to
+            var key = database.findKey(list.getName());
+            if (key != null) {
+                Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+                alert.setTitle("Grocify");
+                alert.setHeaderText("A list named " + list.getName() + " is already in the database.");
+                alert.setContentText("Do you want to replace it?");
+                alert.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+                if (alert.showAndWait().filter(b -> b == ButtonType.YES).isEmpty()) {
+                    return;
+                }
+                database.write(key, list.getData());
+            } else {
+                key = database.create(list.getName(), list.getData());
+            }
+            list.setStorage(database, key);
+            recordPrices(list);
+            list.setDirty(false);
+        } catch (IOException e) {
+            showError("Error writing list", e);
         }
     }
 
-    private boolean loadFile(File file, boolean showDialogOnError) {
-        var listName = getBaseName(file);
-        var list = new GroceryList(listName);
+    private void actionListSpending() {
+        var dialog = new TextInputDialog();
+        dialog.setTitle("Grocify");
+        dialog.setHeaderText("Search spending in database lists");
+        dialog.setContentText("Item name:");
+        var result = dialog.showAndWait();
+        if (result.isEmpty() || result.get().isBlank()) {
+            return;
+        }
+
+        var today = LocalDate.now();
+        var quarterStart = today.withMonth((today.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1)
+            .atStartOfDay(ZoneId.systemDefault()).toInstant();
+        var end = Instant.now().plusSeconds(1);
+        try {
+            var quarter = database.spending(result.get(), quarterStart, end);
+            var allTime = database.spending(result.get(), Instant.EPOCH, end);
+
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("Spending on \"" + result.get().strip() + "\"");
+            alert.setContentText("This quarter: " + quarter.getTotal().toPlainString()
+                + " in " + quarter.getListCount() + " lists\n"
+                + "All time: " + allTime.getTotal().toPlainString()
+                + " in " + allTime.getListCount() + " lists");
+            alert.show();
+        } catch (IOException e) {
+            showError("Error reading list database", e);
+        }
+    }
+
+    private void actionListAnalytics() {
+        if (settings.getString(SETTING_ANALYTICS_DIRECTORY, null) == null && !chooseAnalyticsDirectory()) {
+            return;
+        }
+
+        if (analyticsView == null) {
+            analyticsView = new AnalyticsView(fileChooserOwnerWindow);
+        }
+        analyticsView.setReport(analyticsIndex.getReport(), "Checking for changed lists…");
+        analyticsView.show();
+        analyticsView.toFront();
+        scanAnalytics();
+    }
 
-        var opts = new JSONReader.ReadOptions();
-        opts.readNumbersAsBigDecimal = true;
+    private boolean chooseAnalyticsDirectory() {
+        var chooser = new DirectoryChooser();
+        chooser.setTitle("Choose folder of lists to analyze");
+        var current = settings.getString(SETTING_ANALYTICS_DIRECTORY, null);
+        chooser.setInitialDirectory(current != null && new File(current).isDirectory()
+            ? new File(current) : getFileChooser().getInitialDirectory());
 
+        var directory = chooser.showDialog(fileChooserOwnerWindow);
+        if (directory == null) {
+            return false;
+        }
+        settings.setString(SETTING_ANALYTICS_DIRECTORY, directory.getAbsolutePath());
+        scanAnalytics();
+        return true;
+    }
+
+    private List<String> getSyncPeers() {
+        return Arrays.stream(settings.getString(SETTING_SYNC_PEERS, "").split(","))
+            .map(String::strip)
+            .filter(peer -> !peer.isEmpty())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Start syncing open lists with peers, see {@link SyncService}.
+     */
+    private void startSync() {
+        var port = settings.getInt(SETTING_SYNC_PORT, SyncService.DEFAULT_PORT);
         try {
-            var res = new JSONReader(opts).parse(Files.readString(file.toPath(), StandardCharsets.UTF_8));
-            for (var e : res.getArray()) {
-                var o = e.getObject();
-                var name = o.get("name").getString();
-                Integer amount = null;
-                var num = o.get("amount").getNumber();
-                if (num != null)
-                    amount = num.intValue();
-                var price = (BigDecimal) o.get("price").getNumber();
-                list.getItems().add(new GroceryListItem(name, amount, price));
-            }
-            list.setFile(file);
-            list.setDirty(false);
+            sync.start(port, getSyncPeers());
+        } catch (IOException e) {
+            showError("Could not start sync on port " + port, e);
+            return;
+        }
+        for (var tab : tabPane.getTabs()) {
+            var list = ((ListTab) tab).getList();
+            if (list != null) {
+                sync.attach(list);
+            }
+        }
+        statusLabel.setText("Syncing on port " + port + " with " + getSyncPeers().size() + " peers");
+    }
+
+    private void actionSyncPeers() {
+        var dialog = new TextInputDialog(settings.getString(SETTING_SYNC_PEERS, ""));
+        dialog.setTitle("Grocify");
+        dialog.setHeaderText("Sync lists with other Grocify instances. This instance listens on port "
+            + settings.getInt(SETTING_SYNC_PORT, SyncService.DEFAULT_PORT) + ".");
+        dialog.setContentText("Peers (host:port, separated by commas):");
+        dialog.showAndWait().ifPresent(peers -> {
+            settings.setString(SETTING_SYNC_PEERS, peers.strip());
+            sync.setPeers(getSyncPeers());
+        });
+    }
+
+    /**
+     * Update analytics index in the background, then show the result if analytics are open.
+     */
+    private void scanAnalytics() {
+        var directory = settings.getString(SETTING_ANALYTICS_DIRECTORY, null);
+        if (directory == null) {
+            return;
+        }
+
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                var read = analyticsIndex.scan(Path.of(directory));
+                return analyticsIndex.size() + " lists, " + read + " read since last update";
+            } catch (IOException e) {
+                e.printStackTrace();
+                return "Error reading " + directory + ": " + e.getMessage();
+            }
+        }).thenAccept(message -> Platform.runLater(() -> {
+            if (analyticsView != null) {
+                analyticsView.setReport(analyticsIndex.getReport(), message);
+            }
+        }));
+    }
+
+    private void actionListDuplicates() {
+        if (currentList == null) return;
+
+        var list = currentList;
+        var others = new ArrayList<GroceryList>();
+        for (var tab : tabPane.getTabs()) {
+            var other = ((ListTab) tab).getList();
+            if (other != null && other != list) {
+                others.add(other);
+            }
+        }
+
+        statusLabel.setText("Looking for duplicates in " + list.getName() + "…");
+        var within = list.findDuplicates(ForkJoinPool.commonPool());
+        var across = list.findDuplicatesIn(others, ForkJoinPool.commonPool());
+        within.thenCombine(across, (groups, acrossGroups) -> {
+            Platform.runLater(() -> showDuplicateGroups(list, groups, acrossGroups));
+            return null;
+        });
+    }
+
+    /**
+     * Show duplicates found within a list, offering to merge them, and in other open lists.
+     */
+    private void showDuplicateGroups(GroceryList list, List<List<GroceryListItem>> groups,
+                                     Map<GroceryList, List<List<GroceryListItem>>> acrossGroups) {
+        statusLabel.setText("");
+        if (groups.isEmpty() && acrossGroups.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("No duplicates found in " + list.getName() + " or other open lists.");
+            alert.show();
+            return;
+        }
+
+        // Items already in other lists are flagged too, but only duplicates within the list can be merged
+        var flagged = new ArrayList<>(groups);
+        acrossGroups.values().forEach(g -> g.forEach(group -> flagged.add(List.of(group.get(0)))));
+        list.flagDuplicates(flagged);
+
+        var text = new StringBuilder();
+        var shown = 0;
+        for (var i = 0; i < groups.size() && shown < 10; i++, shown++) {
+            text.append(groups.get(i).stream().map(GroceryListItem::getName)
+                .collect(Collectors.joining("\", \"", "\"", "\"\n")));
+        }
+        var acrossCount = 0;
+        for (var e : acrossGroups.entrySet()) {
+            acrossCount += e.getValue().size();
+            for (var group : e.getValue()) {
+                if (shown++ >= 10) {
+                    break;
+                }
+                text.append(group.stream().map(GroceryListItem::getName)
+                    .collect(Collectors.joining("\", \"", "\"", "\" also in " + e.getKey().getName() + "\n")));
+            }
+        }
+        if (groups.size() + acrossCount > 10) {
+            text.append("…and ").append(groups.size() + acrossCount - 10).append(" more\n");
+        }
+
+        if (groups.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Grocify");
+            alert.setHeaderText("Found " + acrossCount + " items that are possibly already in other open lists.");
+            alert.setContentText(text.toString());
+            alert.show();
+            return;
+        }
+
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Grocify");
+        alert.setHeaderText("Found " + groups.size() + " groups of possible duplicates. Merge them?");
+        alert.setContentText(text.toString());
+        alert.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+        alert.showAndWait()
+            .filter(b -> b == ButtonType.YES)
+            .ifPresent(b -> statusLabel.setText("Merged " + list.mergeDuplicates(groups) + " duplicate rows"));
+    }
+
+    private void actionListReprice() {
+        if (currentList == null) return;
+
+        currentList.reprice(priceCatalog, false);
+    }
+
+    private boolean loadFile(File file, boolean showDialogOnError) {
+        try {
+            if (isPagedFile(file)) {
+                // Indexing reads the whole file, so only its start is checked before the tab is opened
+                PagedItems.checkFile(file);
+                var tab = new ListTab(file, getBaseName(file));
+                restoreTab(tab, showDialogOnError);
+                addTab(tab);
+                return true;
+            }
+
+            var listFile = jsonStorage.readList(file.getPath());
+            var list = createList(file, listFile.getItems(), listFile.getSortOrder());
+            // Only unknown prices are taken from opened lists, since old lists would overwrite newer prices
+            priceCatalog.recordMissing(list.getData());
             addTab(list);
+            if (settings.getBoolean(SETTING_FILL_PRICES, false)) {
+                // After the list is marked clean, so it shows as changed if any prices were filled in
+                var filled = list.reprice(priceCatalog, true);
+                if (filled > 0) {
+                    statusLabel.setText("Filled in " + filled + " missing prices in " + list.getName());
+                }
+            }
             return true;
-        } catch (IOException | JSONParseException | JSONTypeException e) {
+        } catch (IOException e) {
             if (showDialogOnError) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Grocify");
-                alert.setHeaderText("Error reading file. Are you sure it's the correct file?");
-                alert.setContentText(e.getMessage());
-                alert.show();
+                showReadError(e);
             }
             return false;
         }
     }
 
-    private boolean saveToFile(File file) {
-        var arr = new JSONArray();
-        currentList.getItems().forEach(e -> arr.add(new JSONObject()
-            .put("name", e.getName())
-            .put("amount", e.getAmount())
-            .put("price", e.getPricePerUnit())));
+    private void showReadError(IOException e) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Grocify");
+        alert.setHeaderText("Error reading file. Are you sure it's the correct file?");
+        alert.setContentText(e.getMessage());
+        alert.show();
+    }
 
-        try (var writer = new PrintWriter(file, StandardCharsets.UTF_8)) {
-            writer.println(arr.toJSONString());
+    /**
+     * Whether file is too large to keep in memory and should be opened as a paged list.
+     */
+    private boolean isPagedFile(File file) throws IOException {
+        // Compressed files have no row offsets to page by, so they're always read whole
+        return file.length() > settings.getInt(SETTING_PAGING_THRESHOLD_MB, 64) * 1024L * 1024L
+            && ListCompression.detect(file) == ListCompression.NONE;
+    }
+
+    private void loadDatabaseList(String name, boolean showDialogOnError) {
+        try {
+            var key = database.findKey(name);
+            if (key == null) {
+                throw new IOException("There is no list named " + name + " in the database.");
+            }
+            var list = new GroceryList(name);
+            list.setPriceCatalog(priceCatalog);
+            list.getData().addAll(database.read(key));
+            list.setStorage(database, key);
+            list.setDirty(false);
+            addTab(list);
+        } catch (IOException e) {
+            if (showDialogOnError) {
+                showError("Error reading list database", e);
+            }
+        }
+    }
+
+    private GroceryList createPagedList(File file, PagedItems items) {
+        var list = new GroceryList(getBaseName(file), items);
+        list.setPriceCatalog(priceCatalog);
+        list.updateFileStamp();
+        list.setDirty(false);
+        return list;
+    }
+
+    private boolean saveToFile(GroceryList list, File file) {
+        // Nothing to do if file already has the same contents
+        if (file.equals(list.getFile()) && !list.isDirty()
+            && file.lastModified() == list.getFileLastModified() && file.length() == list.getFileSize()) {
+            return true;
+        }
+
+        try {
+            var pagedItems = list.getPagedItems();
+            if (pagedItems != null) {
+                // Paged lists aren't merged, since that would need every row in memory, but others' saves still
+                // have to wait until the file has been replaced
+                var lock = ListMerge.lock(file);
+                try {
+                    pagedItems.write(file);
+                } finally {
+                    lock.close();
+                }
+                list.setFileStamp(file.lastModified(), file.length());
+            } else {
+                // Others' changes are only merged into the list's own file, other files are replaced
+                var base = file.equals(list.getFile()) ? list.getMergeBase() : ListMerge.Base.EMPTY;
+                var contentHash = list.getContentHash();
+                var result = ListMerge.save(file, list.getData(), list.getSortOrderString(), base,
+                    list.getFileLastModified(), list.getFileSize());
+                list.applyMerge(result, contentHash);
+                showMergeStatus(list, result);
+                recordPrices(list);
+            }
             return true;
         } catch (IOException e) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -425,8 +1519,47 @@ public class GrocifyFx extends Application {
         }
     }
 
+    private void showMergeStatus(GroceryList list, ListMerge.Result result) {
+        if (result.getConflicts() > 0) {
+            statusLabel.setText(String.format("Merged changes to %s from others, %d rows also edited by others kept as "
+                + "edited here", list.getName(), result.getConflicts()));
+        } else if (result.hasChangesFromFile()) {
+            statusLabel.setText("Merged changes to " + list.getName() + " from others");
+        }
+    }
+
+    private boolean saveToStorage(GroceryList list) {
+        try {
+            list.getStorage().write(list.getStorageKey(), list.getData());
+            recordPrices(list);
+            return true;
+        } catch (IOException e) {
+            showError("Error writing list", e);
+            return false;
+        }
+    }
+
+    /**
+     * Record prices of a list that was just saved in the price catalog.
+     */
+    private void recordPrices(GroceryList list) {
+        if (list.getPagedItems() == null) {
+            priceCatalog.recordAll(list.getData());
+        }
+    }
+
+    private void showError(String header, Exception e) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Grocify");
+        alert.setHeaderText(header);
+        alert.setContentText(e.getMessage());
+        alert.show();
+    }
+
     private String getBaseName(File file) {
         var fullName = file.getName();
+        var extension = ListCompression.forFileName(fullName).getExtension();
+        fullName = fullName.substring(0, fullName.length() - extension.length());
         var lastDot = fullName.lastIndexOf('.');
 
         if (lastDot != -1) {
@@ -450,10 +1583,10 @@ public class GrocifyFx extends Application {
         return result.isPresent() && result.get() == btnClose;
     }
 
-    private boolean confirmCloseTab() {
+    private boolean confirmCloseTab(ListTab tab) {
         Alert alert = new Alert(Alert.AlertType.WARNING);
         alert.setTitle("Grocify");
-        alert.setHeaderText("Do you want to save the changes you made to " + currentList.getName() + "?");
+        alert.setHeaderText("Do you want to save the changes you made to " + tab.getList().getName() + "?");
         alert.setContentText("Your changes will be lost if you don't save them.");
 
         ButtonType btnSave = new ButtonType("Save");
@@ -464,8 +1597,7 @@ public class GrocifyFx extends Application {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == btnSave) {
-            actionFileSave();
-            return true;
+            return saveList(tab.getList());
         } else {
             return result.isPresent() && result.get() == btnNoSave;
         }
@@ -478,15 +1610,45 @@ public class GrocifyFx extends Application {
         alert.setContentText("Creating new lists:\n" +
             "File > New or Ctrl+N to create a new list.\n\n" +
             "Saving a list:\n" +
-            "File > Save or Ctrl+S to save the current list.\n\n" +
+            "File > Save or Ctrl+S to save the current list. File > Save All or Ctrl+Alt+S saves every list, and " +
+            "Options > Save All on Exit does so when Grocify is closed.\n\n" +
             "Opening a list:\n" +
             "File > Open or Ctrl+O to open a saved list in a new tab.\n\n" +
+            "Compressed lists:\n" +
+            "Save a list with a name ending in .json.gz to compress it, or .json.lz4 to compress it faster. " +
+            "Compressed lists open like any other.\n\n" +
+            "Syncing:\n" +
+            "Options > LAN Sync keeps open lists in sync with other Grocify instances listed in Options > Sync " +
+            "Peers. Lists with the same name are synced, and only edits are sent, so open the same file " +
+            "everywhere first. Use only in a trusted network.\n\n" +
+            "Shared lists:\n" +
+            "Several people can edit the same list file, for example in a shared folder. When saving, rows others " +
+            "have changed, added or deleted since are merged in. Rows edited by both keep the edits made here.\n\n" +
             "Adding an item:\n" +
             "Use the text boxes at the bottom of the window to add a new item.\n\n" +
             "Editing an item:\n" +
             "Double-click a cell to edit it, then Escape to cancel or Enter to save changes.\n\n" +
             "Removing an item:\n" +
-            "Select a row and press Delete to delete it.\n");
+            "Select a row and press Delete to delete it.\n\n" +
+            "Sorting:\n" +
+            "Click a column header to sort by it, and again to reverse. Shift-click another header to sort by it " +
+            "next. The sort order is saved with the list. Rows can only be dragged to reorder them while the " +
+            "list is unsorted.\n\n" +
+            "Prices:\n" +
+            "Prices are remembered when lists are saved or opened or prices are edited, and filled in for new " +
+            "items. With Options > Fill In Missing Prices on Open, rows without a price get the last known price " +
+            "when a list is opened. " +
+            "List > Reprice from Catalog updates the whole list to the last known prices.\n\n" +
+            "Database:\n" +
+            "File > Save to Database keeps the list in Grocify's own database instead of a file. List > Search " +
+            "Spending shows how much has been spent on an item across all lists in the database.\n\n" +
+            "Analytics:\n" +
+            "List > Spending Analytics shows spending over time and item statistics for every list file in the " +
+            "folder chosen in Options > Analytics Folder.\n\n" +
+            "Duplicates:\n" +
+            "Items that look like duplicates of each other, like \"Milk\" and \"Mlik\", are highlighted as they are " +
+            "added or renamed. List > Find Duplicates looks through the whole list and merges them. It also shows " +
+            "items that are possibly already in other open lists.\n");
 
         alert.showAndWait();
     }
@@ -499,4 +1661,88 @@ public class GrocifyFx extends Application {
 
         alert.showAndWait();
     }
+
+    /**
+     * Copy of a list's contents being saved in the background. Paged lists copy only their edited and added rows.
+     */
+    private class SaveJob {
+        private final GroceryList list;
+        private final PagedItems.Save pagedSave;
+        private final List<GroceryListItem> items = new ArrayList<>();
+        private final String sortOrder;
+        private final long contentHash;
+        private final File file;
+        private final ListStorage storage;
+        private final String storageKey;
+        private final ListMerge.Base mergeBase;
+        private final long fileLastModified;
+        private final long fileSize;
+        private ListMerge.Result result;
+        private IOException error;
+
+        SaveJob(GroceryList list) throws IOException {
+            this.list = list;
+            if (list.getPagedItems() != null) {
+                // Paged lists aren't merged, since that would need every row in memory
+                pagedSave = list.getPagedItems().save(list.getFile());
+            } else {
+                pagedSave = null;
+                // Items are edited in place on the FX thread, so copy them
+                for (var item : list.getData()) {
+                    items.add(item.copy());
+                }
+            }
+            this.sortOrder = list.getSortOrderString();
+            this.contentHash = list.getContentHash();
+            this.file = list.getFile();
+            this.storage = list.getStorage();
+            this.storageKey = list.getStorageKey();
+            this.mergeBase = list.getMergeBase();
+            this.fileLastModified = list.getFileLastModified();
+            this.fileSize = list.getFileSize();
+        }
+
+        /**
+         * Write list, keeping any error to be reported once all lists have been saved.
+         */
+        void write() {
+            try {
+                if (pagedSave != null) {
+                    var lock = ListMerge.lock(file);
+                    try {
+                        pagedSave.write();
+                    } finally {
+                        lock.close();
+                    }
+                } else if (storage != null) {
+                    storage.write(storageKey, items);
+                } else {
+                    result = ListMerge.save(file, items, sortOrder, mergeBase, fileLastModified, fileSize);
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                // Would otherwise fail the whole save without a report
+                e.printStackTrace();
+                error = new IOException("Unexpected error: " + e, e);
+            }
+        }
+
+        /**
+         * Mark list saved and apply others' changes to it. Must be called on the FX thread.
+         */
+        void finish() {
+            if (pagedSave != null) {
+                pagedSave.finish();
+                list.updateFileStamp();
+                // Stays dirty if rows were edited while saving
+                list.setDirty(false);
+            } else if (result != null) {
+                list.applyMerge(result, contentHash);
+            } else {
+                list.markSaved(contentHash);
+            }
+            recordPrices(list);
+        }
+    }
 }
@@ -0,0 +1,247 @@
+package me.aleksi.grocify;
+
+import me.aleksi.jayson.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reading and writing grocery lists as JSON files.
+ *
+ * <p>A list file is an array of objects with "name", "amount" and "price" keys, and "id" and "ver" keys holding each
+ * row's identity and version. Rows saved by older versions have no identity, and get one derived from their contents
+ * when read, so everyone reading the same file gets the same identities and can merge their changes. Lists sorted by
+ * column are saved as an object instead, with the sort order in "sort" and the array in "items". All methods are safe
+ * to call from any thread.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public final class JsonListFormat {
+    private JsonListFormat() {
+    }
+
+    static JSONReader newReader() {
+        var opts = new JSONReader.ReadOptions();
+        opts.readNumbersAsBigDecimal = true;
+        return new JSONReader(opts);
+    }
+
+    /**
+     * Whether given file name has a list file extension, compressed or not.
+     *
+     * @param fileName file name
+     * @return true if file name ends with ".json", optionally followed by a compression extension
+     */
+    public static boolean isListFile(String fileName) {
+        var name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".json" + ListCompression.forFileName(name).getExtension());
+    }
+
+    /**
+     * Read all items from a list file, which may be compressed.
+     *
+     * @param file file to read
+     * @return list items
+     * @throws IOException        if file cannot be read
+     * @throws JSONParseException if file is not valid JSON
+     * @throws JSONTypeException  if file is not a list file
+     */
+    public static List<GroceryListItem> read(File file) throws IOException, JSONParseException, JSONTypeException {
+        return readList(file).getItems();
+    }
+
+    /**
+     * Read all items and sort order from a list file, which may be compressed.
+     *
+     * @param file file to read
+     * @return list items and sort order
+     * @throws IOException        if file cannot be read
+     * @throws JSONParseException if file is not valid JSON
+     * @throws JSONTypeException  if file is not a list file
+     */
+    public static ListFile readList(File file) throws IOException, JSONParseException, JSONTypeException {
+        String json;
+        try (var in = ListCompression.openInput(file)) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        var res = newReader().parse(json);
+        JSONArray rows;
+        var sortOrder = "";
+        if (json.strip().startsWith("{")) {
+            var obj = res.getObject();
+            if (obj.get("items") == null) {
+                throw new IOException("Not a list file: " + file.getName());
+            }
+            rows = obj.get("items").getArray();
+            var sort = obj.get("sort");
+            if (sort != null && sort.getString() != null) {
+                sortOrder = sort.getString();
+            }
+        } else {
+            rows = res.getArray();
+        }
+
+        var items = new ArrayList<GroceryListItem>();
+        // Number of rows without identities seen so far with each content
+        var legacyRows = new HashMap<Long, Integer>();
+        for (var e : rows) {
+            var item = toItem(e.getObject());
+            if (!item.hasId()) {
+                var hash = item.contentHash();
+                var occurrence = legacyRows.merge(hash, 1, Integer::sum);
+                item = new GroceryListItem(legacyId(hash, occurrence), item.getVersion(), item.getName(),
+                    item.getAmount(), item.getPricePerUnit());
+            }
+            items.add(item);
+        }
+        return new ListFile(items, sortOrder);
+    }
+
+    /**
+     * Identity of a row saved without one, the same for everyone reading the same file.
+     *
+     * @param contentHash content hash of row
+     * @param occurrence  how many rows with the same contents there have been so far, including this one
+     * @return row identity
+     */
+    static String legacyId(long contentHash, int occurrence) {
+        return Long.toHexString(contentHash + occurrence * 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * Write all items to a list file, replacing its contents only once the new contents are completely written.
+     *
+     * <p>The file is compressed if its name ends with a compression extension, see {@link ListCompression}.</p>
+     *
+     * @param file  file to write
+     * @param items list items
+     * @throws IOException if file cannot be written
+     */
+    public static void write(File file, List<GroceryListItem> items) throws IOException {
+        write(file, items, null);
+    }
+
+    /**
+     * Write all items and sort order to a list file, replacing its contents only once the new contents are completely
+     * written.
+     *
+     * <p>The file is compressed if its name ends with a compression extension, see {@link ListCompression}.</p>
+     *
+     * @param file      file to write
+     * @param items     list items, in list order
+     * @param sortOrder sort order of list, see {@link GroceryList#getSortOrderString()}, or null or empty if list
+     *                  isn't sorted
+     * @throws IOException if file cannot be written
+     */
+    public static void write(File file, List<GroceryListItem> items, String sortOrder) throws IOException {
+        var arr = new JSONArray();
+        items.forEach(e -> arr.add(toJSON(e)));
+        // Unsorted lists stay readable by older versions. Sort order goes first, so paged reading finds the rows
+        // after it, see PagedItems. It only has column ids, so it needs no escaping.
+        var json = sortOrder == null || sortOrder.isEmpty() ? arr.toJSONString()
+            : "{\"sort\":\"" + sortOrder + "\",\"items\":" + arr.toJSONString() + "}";
+
+        var tmp = file.toPath().resolveSibling(file.getName() + ".tmp");
+        var compression = ListCompression.forFileName(file.getName());
+        try (var writer = new OutputStreamWriter(compression.openOutput(tmp), StandardCharsets.UTF_8)) {
+            writer.write(json);
+            writer.write(System.lineSeparator());
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Parse a single item from its JSON object.
+     *
+     * @param json JSON object of a single item
+     * @return parsed item
+     * @throws JSONParseException if string is not valid JSON
+     * @throws JSONTypeException  if string is not an item object
+     */
+    public static GroceryListItem parseItem(String json) throws JSONParseException, JSONTypeException {
+        return toItem(newReader().parse(json).getObject());
+    }
+
+    /**
+     * Format a single item as a JSON object.
+     *
+     * @param item item to format
+     * @return JSON object of item
+     */
+    public static String formatItem(GroceryListItem item) {
+        return toJSON(item).toJSONString();
+    }
+
+    static GroceryListItem toItem(JSONObject o) throws JSONTypeException {
+        var name = o.get("name").getString();
+        Integer amount = null;
+        var num = o.get("amount").getNumber();
+        if (num != null)
+            amount = num.intValue();
+        var price = (BigDecimal) o.get("price").getNumber();
+
+        // Files saved by older versions have no identities
+        String id = null;
+        var version = 0L;
+        var idValue = o.get("id");
+        if (idValue != null) {
+            id = idValue.getString();
+        }
+        var versionValue = o.get("ver");
+        if (versionValue != null && versionValue.getNumber() != null) {
+            version = versionValue.getNumber().longValue();
+        }
+        return new GroceryListItem(id, version, name, amount, price);
+    }
+
+    static JSONObject toJSON(GroceryListItem item) {
+        return new JSONObject()
+            .put("id", item.getId())
+            .put("ver", item.getVersion())
+            .put("name", item.getName())
+            .put("amount", item.getAmount())
+            .put("price", item.getPricePerUnit());
+    }
+
+    /**
+     * Contents of a list file.
+     */
+    public static class ListFile {
+        private final List<GroceryListItem> items;
+        private final String sortOrder;
+
+        ListFile(List<GroceryListItem> items, String sortOrder) {
+            this.items = items;
+            this.sortOrder = sortOrder;
+        }
+
+        /**
+         * Get list items.
+         *
+         * @return list items, in list order
+         */
+        public List<GroceryListItem> getItems() {
+            return items;
+        }
+
+        /**
+         * Get sort order of list.
+         *
+         * @return sort order, see {@link GroceryList#getSortOrderString()}, or an empty string if list isn't sorted
+         */
+        public String getSortOrder() {
+            return sortOrder;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package me.aleksi.grocify;
+
+import me.aleksi.jayson.JSONParseException;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads lists kept each in its own JSON file. Keys are file paths.
+ *
+ * <p>This is not a {@link ListStorage}: list files are saved with {@link ListMerge#save}, which merges in changes
+ * others have made to the file since it was read instead of replacing it.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ * @see JsonListFormat
+ */
+public class JsonListStorage {
+    /**
+     * Read all items and sort order of a list.
+     *
+     * @param key list key
+     * @return list items and sort order
+     * @throws IOException if list cannot be read
+     */
+    public JsonListFormat.ListFile readList(String key) throws IOException {
+        try {
+            return JsonListFormat.readList(new File(key));
+        } catch (JSONParseException | JSONTypeException e) {
+            throw new IOException("Not a valid list file: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package me.aleksi.grocify;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of list files.
+ *
+ * <p>Compressed files are recognized from their first bytes when read, so their names don't matter. When written, the
+ * compression is picked by file extension. Gzip compresses better, LZ4 is several times faster.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public enum ListCompression {
+    /**
+     * Plain JSON.
+     */
+    NONE(""),
+    /**
+     * Gzip, extension ".gz".
+     */
+    GZIP(".gz"),
+    /**
+     * LZ4 frame format, extension ".lz4".
+     */
+    LZ4(".lz4");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 4;
+
+    private final String extension;
+
+    ListCompression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Get compression to use when writing file with given name.
+     *
+     * @param fileName file name
+     * @return compression matching file extension, or {@link #NONE}
+     */
+    public static ListCompression forFileName(String fileName) {
+        var name = fileName.toLowerCase(Locale.ROOT);
+        for (var compression : values()) {
+            if (compression != NONE && name.endsWith(compression.extension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Detect compression of an existing file from its first bytes.
+     *
+     * @param file file to check
+     * @return compression of file
+     * @throws IOException if file cannot be read
+     */
+    public static ListCompression detect(File file) throws IOException {
+        try (var in = new FileInputStream(file)) {
+            return detect(in.readNBytes(HEADER_SIZE));
+        }
+    }
+
+    private static ListCompression detect(byte[] header) {
+        if (header.length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        // LZ4 frame magic number 0x184D2204, little-endian
+        if (header.length >= 4 && header[0] == 0x04 && header[1] == 0x22 && header[2] == 0x4D && header[3] == 0x18) {
+            return LZ4;
+        }
+        return NONE;
+    }
+
+    /**
+     * Open a list file for reading, decompressing it as it's read if needed.
+     *
+     * @param file file to read
+     * @return buffered stream of uncompressed contents
+     * @throws IOException if file cannot be read
+     */
+    public static InputStream openInput(File file) throws IOException {
+        var in = new BufferedInputStream(Channels.newInputStream(
+            FileChannel.open(file.toPath(), StandardOpenOption.READ)), BUFFER_SIZE);
+        try {
+            in.mark(HEADER_SIZE);
+            var header = in.readNBytes(HEADER_SIZE);
+            in.reset();
+
+            switch (detect(header)) {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                case LZ4:
+                    return new LZ4FrameInputStream(in);
+                default:
+                    return in;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a file for writing with this compression, replacing its contents.
+     *
+     * @param path file to write
+     * @return buffered stream compressing what's written to it
+     * @throws IOException if file cannot be written
+     */
+    public OutputStream openOutput(Path path) throws IOException {
+        var out = new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(path,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)), BUFFER_SIZE);
+        try {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out, BUFFER_SIZE);
+                case LZ4:
+                    return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+                default:
+                    return out;
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get file extension added after ".json".
+     *
+     * @return file extension, empty for {@link #NONE}
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
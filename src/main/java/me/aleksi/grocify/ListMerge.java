@@ -0,0 +1,345 @@
+package me.aleksi.grocify;
+
+import me.aleksi.jayson.JSONParseException;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Saving list files that several people may be editing at once.
+ *
+ * <p>While saving, a lock is held on a ".lock" file next to the list file, since the list file itself is replaced by
+ * renaming. If the list file has changed since it was last read or saved, the list is merged row by row with the
+ * file's current contents, using the rows as they were last read or saved as the common base:</p>
+ *
+ * <ul>
+ *     <li>rows changed only on one side get that side's contents,</li>
+ *     <li>rows changed on both sides get local contents, and count as a conflict,</li>
+ *     <li>rows deleted on one side are deleted, unless the other side has changed them,</li>
+ *     <li>rows added on either side are kept, rows added in the file after the row they follow there.</li>
+ * </ul>
+ *
+ * <p>Rows are matched by identity, and changes in the file are found by version, so a merge costs about as much as
+ * reading the file. Each saved row that changed gets a new version.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public final class ListMerge {
+    private ListMerge() {
+    }
+
+    /**
+     * Lock given list file against other writers, waiting until it's available.
+     *
+     * @param file list file
+     * @return lock, released when closed
+     * @throws IOException if lock file cannot be opened
+     */
+    public static Closeable lock(File file) throws IOException {
+        var channel = FileChannel.open(file.toPath().resolveSibling(file.getName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            var lock = channel.lock();
+            return () -> {
+                try {
+                    lock.release();
+                } finally {
+                    channel.close();
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Save items to a list file, merging them with the file's current contents if someone else has changed it.
+     *
+     * @param file             file to save to
+     * @param items            items to save, not modified
+     * @param sortOrder        sort order to save, see {@link GroceryList#getSortOrderString()}
+     * @param base             rows as they were when file was last read or saved, or {@link Base#EMPTY} to replace
+     *                         file
+     * @param fileLastModified modification time file had when it was last read or saved
+     * @param fileSize         size file had when it was last read or saved
+     * @return merge result, including the saved rows
+     * @throws IOException if file cannot be read or written, or is not a list file
+     */
+    public static Result save(File file, List<GroceryListItem> items, String sortOrder, Base base,
+                              long fileLastModified, long fileSize) throws IOException {
+        var lock = lock(file);
+        try {
+            List<GroceryListItem> theirs = null;
+            if (base != Base.EMPTY && file.exists()
+                && (file.lastModified() != fileLastModified || file.length() != fileSize)) {
+                try {
+                    theirs = JsonListFormat.read(file);
+                } catch (JSONParseException | JSONTypeException e) {
+                    throw new IOException("Not a valid list file: " + file.getName(), e);
+                }
+            }
+
+            var result = merge(items, base, theirs);
+            // Sort order isn't merged, the one saved last wins
+            JsonListFormat.write(file, result.items, sortOrder);
+            // Taken while still locked, so changes by others after this are noticed
+            result.fileLastModified = file.lastModified();
+            result.fileSize = file.length();
+            return result;
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Merge local rows with rows currently in file.
+     *
+     * @param mine   local rows
+     * @param base   rows as they were when file was last read or saved
+     * @param theirs rows currently in file, or null if file hasn't changed since
+     * @return merge result
+     */
+    static Result merge(List<GroceryListItem> mine, Base base, List<GroceryListItem> theirs) {
+        var result = new Result();
+        var theirById = new HashMap<String, GroceryListItem>();
+        if (theirs != null) {
+            for (var item : theirs) {
+                theirById.put(item.getId(), item);
+            }
+        }
+
+        // Local rows, in local order
+        var kept = new ArrayList<GroceryListItem>(mine.size());
+        var mineIds = new HashSet<String>(mine.size() * 2);
+        for (var item : mine) {
+            var id = item.getId();
+            mineIds.add(id);
+            var row = base.rows.get(id);
+            var changed = row == null || item.contentHash() != row.hash;
+            if (theirs == null || row == null) {
+                kept.add(withVersion(item, changed ? (row == null ? 0 : row.version) + 1 : item.getVersion()));
+                continue;
+            }
+
+            var their = theirById.get(id);
+            if (their == null) {
+                // Deleted in file, keep only if changed here
+                if (changed) {
+                    kept.add(withVersion(item, row.version + 1));
+                } else {
+                    result.deleted.add(id);
+                }
+            } else if (their.getVersion() != row.version) {
+                if (changed) {
+                    result.conflicts++;
+                    kept.add(withVersion(item, Math.max(their.getVersion(), row.version) + 1));
+                } else {
+                    result.updated.put(id, their);
+                    kept.add(their);
+                }
+            } else {
+                kept.add(withVersion(item, changed ? row.version + 1 : row.version));
+            }
+        }
+
+        // Rows only in file go after the row they follow in file
+        var insertedAfter = new HashMap<String, List<GroceryListItem>>();
+        if (theirs != null) {
+            String previous = null;
+            for (var their : theirs) {
+                var id = their.getId();
+                if (mineIds.contains(id)) {
+                    if (!result.deleted.contains(id)) {
+                        previous = id;
+                    }
+                    continue;
+                }
+                var row = base.rows.get(id);
+                // Deleted here, keep only if changed in file
+                if (row != null && their.getVersion() == row.version) {
+                    continue;
+                }
+                insertedAfter.computeIfAbsent(previous, k -> new ArrayList<>()).add(their);
+                result.inserted++;
+                previous = id;
+            }
+        }
+
+        var items = new ArrayList<GroceryListItem>(kept.size() + result.inserted);
+        appendInserted(items, insertedAfter, null);
+        for (var item : kept) {
+            items.add(item);
+            appendInserted(items, insertedAfter, item.getId());
+        }
+        // Rows following rows that were removed from both sides
+        for (var rows : insertedAfter.values()) {
+            items.addAll(rows);
+        }
+
+        result.items = items;
+        result.base = Base.of(items);
+        return result;
+    }
+
+    private static void appendInserted(List<GroceryListItem> items, Map<String, List<GroceryListItem>> insertedAfter,
+                                       String id) {
+        var rows = insertedAfter.remove(id);
+        while (rows != null) {
+            items.addAll(rows);
+            // Each inserted row is followed by the next one, so only the last can have more following it
+            rows = insertedAfter.remove(rows.get(rows.size() - 1).getId());
+        }
+    }
+
+    private static GroceryListItem withVersion(GroceryListItem item, long version) {
+        var copy = item.copy();
+        copy.setVersion(version);
+        return copy;
+    }
+
+    /**
+     * Versions and contents of rows as they were when a list file was last read or saved.
+     */
+    public static class Base {
+        /**
+         * Base of a list that has no file yet.
+         */
+        public static final Base EMPTY = new Base(Map.of());
+
+        private final Map<String, Row> rows;
+
+        private Base(Map<String, Row> rows) {
+            this.rows = rows;
+        }
+
+        /**
+         * Create base from rows as they are in file.
+         *
+         * @param items rows in file
+         * @return new base
+         */
+        public static Base of(List<GroceryListItem> items) {
+            var rows = new HashMap<String, Row>(items.size() * 2);
+            for (var item : items) {
+                rows.put(item.getId(), new Row(item.getVersion(), item.contentHash()));
+            }
+            return new Base(rows);
+        }
+
+        /**
+         * Whether item has the same contents it had in base.
+         *
+         * @param item item to check
+         * @return true if item is in base and hasn't changed since
+         */
+        boolean isUnchanged(GroceryListItem item) {
+            var row = rows.get(item.getId());
+            return row != null && row.hash == item.contentHash();
+        }
+    }
+
+    private static class Row {
+        private final long version;
+        private final long hash;
+
+        Row(long version, long hash) {
+            this.version = version;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Result of saving a list.
+     */
+    public static class Result {
+        private final Set<String> deleted = new HashSet<>();
+        private final Map<String, GroceryListItem> updated = new HashMap<>();
+        private List<GroceryListItem> items;
+        private Base base;
+        private int inserted;
+        private int conflicts;
+        private long fileLastModified;
+        private long fileSize;
+
+        /**
+         * Get rows as saved, in order.
+         *
+         * @return saved rows
+         */
+        public List<GroceryListItem> getItems() {
+            return items;
+        }
+
+        /**
+         * Get base for next save.
+         *
+         * @return saved rows as base
+         */
+        public Base getBase() {
+            return base;
+        }
+
+        /**
+         * Whether rows were added, changed or deleted in the file by someone else.
+         *
+         * @return true if saved rows include changes from file
+         */
+        public boolean hasChangesFromFile() {
+            return inserted > 0 || !updated.isEmpty() || !deleted.isEmpty();
+        }
+
+        /**
+         * Get number of rows changed both locally and in file. Local changes were kept.
+         *
+         * @return number of conflicting rows
+         */
+        public int getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * Whether a local row was deleted in file, and so has been left out.
+         *
+         * @param id row identity
+         * @return true if row was deleted in file
+         */
+        public boolean isDeleted(String id) {
+            return deleted.contains(id);
+        }
+
+        /**
+         * Get contents of a local row that was changed in file.
+         *
+         * @param id row identity
+         * @return row as changed in file, or null if it wasn't
+         */
+        public GroceryListItem getUpdated(String id) {
+            return updated.get(id);
+        }
+
+        /**
+         * Get modification time of saved file.
+         *
+         * @return file modification time
+         */
+        public long getFileLastModified() {
+            return fileLastModified;
+        }
+
+        /**
+         * Get size of saved file.
+         *
+         * @return file size
+         */
+        public long getFileSize() {
+            return fileSize;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package me.aleksi.grocify;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Place where grocery lists are stored.
+ *
+ * <p>Lists are identified by a storage-specific key, like a list id. Implementations must be safe to call from any
+ * thread. List files are not a storage, since saving them merges instead of replacing, see {@link ListMerge}.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public interface ListStorage {
+    /**
+     * Read all items of a list.
+     *
+     * @param key list key
+     * @return list items
+     * @throws IOException if list cannot be read
+     */
+    List<GroceryListItem> read(String key) throws IOException;
+
+    /**
+     * Write all items of a list, replacing its previous contents.
+     *
+     * @param key   list key
+     * @param items list items
+     * @throws IOException if list cannot be written
+     */
+    void write(String key, List<GroceryListItem> items) throws IOException;
+}
@@ -0,0 +1,228 @@
+package me.aleksi.grocify;
+
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.layout.StackPane;
+
+import java.io.File;
+import java.math.BigDecimal;
+
+/**
+ * Tab showing a {@link GroceryList}.
+ *
+ * <p>A tab whose list is saved can be hibernated, which drops the list and keeps only its file and summary totals so
+ * that it can be restored later.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class ListTab extends Tab {
+    private final Label placeholder = new Label();
+    private final StackPane placeholderPane = new StackPane(placeholder);
+    private GroceryList list;
+    private File file;
+    private String name;
+    private int rowCount;
+    private int scrollIndex;
+    private long lastViewed = System.currentTimeMillis();
+    private boolean restoring;
+
+    /**
+     * Create a new tab showing given list.
+     *
+     * @param list list to show
+     */
+    public ListTab(GroceryList list) {
+        setList(list);
+    }
+
+    /**
+     * Create a new tab for a list that is still being read. It's shown like a hibernated tab until
+     * {@link #setList(GroceryList)} is called.
+     *
+     * @param file list file
+     * @param name list name
+     */
+    public ListTab(File file, String name) {
+        this.file = file;
+        this.name = name;
+        setText(name);
+        setContent(placeholderPane);
+    }
+
+    /**
+     * Get list shown in tab.
+     *
+     * @return list, or null if tab is hibernated
+     */
+    public GroceryList getList() {
+        return list;
+    }
+
+    /**
+     * Show given list in tab, restoring it if it was hibernated.
+     *
+     * @param list list to show
+     */
+    public void setList(GroceryList list) {
+        this.list = list;
+        this.file = list.getFile();
+        this.name = list.getName();
+        this.restoring = false;
+
+        setText(list.isDirty() ? "*" + list.getName() : list.getName());
+        setContent(list);
+
+        list.dirtyProperty().addListener((ov, oldVal, newVal) -> {
+            if (this.list != list) {
+                return;
+            }
+            if (newVal) {
+                setText("*" + list.getName());
+            } else {
+                setText(list.getName());
+            }
+        });
+    }
+
+    /**
+     * Get backing file of list, even if tab is hibernated.
+     *
+     * @return backing file or null
+     */
+    public File getFile() {
+        return list == null ? file : list.getFile();
+    }
+
+    /**
+     * Whether list has unsaved edits. Hibernated tabs never do.
+     *
+     * @return true if list has unsaved edits
+     */
+    public boolean isDirty() {
+        return list != null && list.isDirty();
+    }
+
+    /**
+     * Whether tab is hibernated.
+     *
+     * @return true if list has been dropped from memory
+     */
+    public boolean isHibernated() {
+        return list == null;
+    }
+
+    /**
+     * Whether tab can be hibernated, i.e. list has been saved and has no unsaved edits.
+     *
+     * <p>Paged lists are never hibernated since they only keep a few rows in memory anyway.</p>
+     *
+     * @return true if tab can be hibernated
+     */
+    public boolean canHibernate() {
+        return list != null && list.getFile() != null && !list.isDirty() && list.getPagedItems() == null;
+    }
+
+    /**
+     * Drop list from memory, keeping only its file and summary totals.
+     *
+     * @throws IllegalStateException if list cannot be hibernated
+     */
+    public void hibernate() {
+        if (!canHibernate()) {
+            throw new IllegalStateException("list cannot be hibernated");
+        }
+
+        file = list.getFile();
+        name = list.getName();
+        rowCount = list.getData().size();
+        var total = BigDecimal.ZERO;
+        for (var item : list.getData()) {
+            if (item.getPricePerUnit() != null) {
+                var amount = item.getAmount() == null ? 1 : item.getAmount();
+                total = total.add(item.getPricePerUnit().multiply(BigDecimal.valueOf(amount)));
+            }
+        }
+        scrollIndex = list.getFirstVisibleIndex();
+
+        list = null;
+        placeholder.setText(name + "\n" + rowCount + " items, total " + total.toPlainString());
+        setContent(placeholderPane);
+    }
+
+    /**
+     * Mark tab as being restored, showing a loading message.
+     *
+     * @return false if tab is already being restored
+     */
+    boolean startRestore() {
+        if (restoring) {
+            return false;
+        }
+        restoring = true;
+        placeholder.setText("Loading " + name + "…");
+        return true;
+    }
+
+    /**
+     * Show an error in place of list when restoring fails.
+     *
+     * @param message error message
+     */
+    void restoreFailed(String message) {
+        restoring = false;
+        placeholder.setText("Could not load " + name + ":\n" + message);
+    }
+
+    /**
+     * Get number of rows in list, even if tab is hibernated.
+     *
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return list == null ? rowCount : list.getData().size();
+    }
+
+    /**
+     * Get number of rows currently held in memory.
+     *
+     * @return number of rows in memory, 0 if tab is hibernated
+     */
+    public int getLoadedRowCount() {
+        return list == null ? 0 : list.getLoadedRowCount();
+    }
+
+    /**
+     * Get index of first visible row, remembered when tab was hibernated.
+     *
+     * @return first visible row index
+     */
+    public int getScrollIndex() {
+        return list == null ? scrollIndex : list.getFirstVisibleIndex();
+    }
+
+    /**
+     * Set index of row to scroll to once list is restored.
+     *
+     * @param scrollIndex first visible row index
+     */
+    void setScrollIndex(int scrollIndex) {
+        this.scrollIndex = scrollIndex;
+    }
+
+    /**
+     * Get time tab was last viewed.
+     *
+     * @return time in milliseconds, see {@link System#currentTimeMillis()}
+     */
+    public long getLastViewed() {
+        return lastViewed;
+    }
+
+    /**
+     * Mark tab as viewed now.
+     */
+    public void touch() {
+        lastViewed = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,158 @@
+package me.aleksi.grocify;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free queue of modifications to a {@link GroceryItemList}, for use from any thread.
+ *
+ * <p>Queued modifications are applied on the FX thread at most once per pulse, all of them together as a single
+ * list change. However fast modifications are queued, the list and the table showing it are only updated once per
+ * frame.</p>
+ *
+ * <p>Modifications queued from one thread are applied in the order they were queued.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class ListUpdateQueue {
+    private final GroceryItemList list;
+    private final Queue<Operation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    /**
+     * Create a new queue for given list.
+     *
+     * @param list list to modify
+     */
+    public ListUpdateQueue(GroceryItemList list) {
+        this.list = list;
+    }
+
+    /**
+     * Queue adding an item to the end of list.
+     *
+     * @param item item to add
+     */
+    public void add(GroceryListItem item) {
+        submit(batch -> batch.items().add(item));
+    }
+
+    /**
+     * Queue adding items to the end of list.
+     *
+     * @param items items to add
+     */
+    public void addAll(Collection<GroceryListItem> items) {
+        var copy = List.copyOf(items);
+        submit(batch -> batch.items().addAll(copy));
+    }
+
+    /**
+     * Queue removing an item from list. Nothing happens if item has been removed already.
+     *
+     * <p>Removals queued one after another are applied together in a single pass over the list.</p>
+     *
+     * @param item item to remove
+     */
+    public void remove(GroceryListItem item) {
+        submit(batch -> batch.removed.add(item));
+    }
+
+    /**
+     * Queue editing an item in place. Edit is run on the FX thread.
+     *
+     * @param item   item to edit
+     * @param editor function that edits item
+     */
+    public void update(GroceryListItem item, Consumer<GroceryListItem> editor) {
+        submit(batch -> {
+            editor.accept(item);
+            batch.updated.add(item);
+        });
+    }
+
+    /**
+     * Queue an arbitrary modification of list. Modification is run on the FX thread.
+     *
+     * @param modification function that modifies list
+     */
+    public void modify(Consumer<List<GroceryListItem>> modification) {
+        submit(batch -> modification.accept(batch.items()));
+    }
+
+    private void submit(Operation op) {
+        pending.add(op);
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    private void drain() {
+        timer.stop();
+        // Reset before polling, so anything queued from now on schedules another pulse
+        scheduled.set(false);
+
+        var ops = new ArrayList<Operation>();
+        for (var op = pending.poll(); op != null; op = pending.poll()) {
+            ops.add(op);
+        }
+        if (ops.isEmpty()) {
+            return;
+        }
+
+        var batch = new Batch();
+        list.batch(() -> {
+            for (var op : ops) {
+                op.apply(batch);
+            }
+            batch.removeQueued();
+            if (!batch.updated.isEmpty()) {
+                for (var i = 0; i < list.size(); i++) {
+                    if (batch.updated.contains(list.get(i))) {
+                        list.updated(i);
+                    }
+                }
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void apply(Batch batch);
+    }
+
+    /**
+     * Modifications being applied in one drain.
+     */
+    private class Batch {
+        private final Set<GroceryListItem> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<GroceryListItem> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /**
+         * Get list to modify, with removals queued before now applied.
+         */
+        List<GroceryListItem> items() {
+            removeQueued();
+            return list;
+        }
+
+        void removeQueued() {
+            if (!removed.isEmpty()) {
+                list.removeIf(removed::contains);
+                removed.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package me.aleksi.grocify;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import me.aleksi.jayson.JSONParseException;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read-mostly list of items backed by a list file, keeping only a few pages of rows in memory.
+ *
+ * <p>The file is indexed once by {@link #open(File)}, remembering the offset of every {@value #PAGE_SIZE}th row.
+ * Pages are read in the background when rows in them are first needed, along with the pages next to them, and their
+ * rows are shown as placeholders until then. Edited and added rows are kept in memory until the list is written.</p>
+ *
+ * <p>Apart from {@link #open(File)} and {@link Save#write()}, methods must be called on the FX thread.</p>
+ *
+ * <p>Only adding rows to the end is supported. Rows cannot be removed or moved. The sort order of sorted list files is
+ * kept as it is when written.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class PagedItems extends ObservableListBase<GroceryListItem> {
+    /**
+     * Number of rows per page.
+     */
+    public static final int PAGE_SIZE = 64;
+    private static final int MAX_CACHED_PAGES = 32;
+    // Start of a list file up to its first row. Sorted lists are written as an object, see JsonListFormat.
+    private static final Pattern HEADER = Pattern.compile(
+        "\\A\\s*(?:\\[|\\{\\s*(?:\"sort\"\\s*:\\s*\"([^\"\\\\]*)\"\\s*,\\s*)?\"items\"\\s*:\\s*\\[)");
+    private static final String LOADING_NAME = "Loading…";
+    private static final int HEADER_LENGTH = 4096;
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "Grocify page prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Integer, List<GroceryListItem>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<GroceryListItem>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Placeholder rows of pages being read
+    private final Map<Integer, List<GroceryListItem>> loading = new HashMap<>();
+    private final Map<Integer, GroceryListItem> edited = new HashMap<>();
+    private final List<GroceryListItem> added = new ArrayList<>();
+    private final String sortOrder;
+    private File file;
+    private long[] pageOffsets;
+    private int fileRowCount;
+
+    private PagedItems(File file, long[] pageOffsets, int fileRowCount, String sortOrder) {
+        this.file = file;
+        this.sortOrder = sortOrder;
+        this.pageOffsets = pageOffsets;
+        this.fileRowCount = fileRowCount;
+    }
+
+    /**
+     * Index a list file. Reads through the whole file, so this should not be called from the FX thread.
+     *
+     * @param file list file
+     * @return paged items of file
+     * @throws IOException if file cannot be read
+     */
+    public static PagedItems open(File file) throws IOException {
+        var header = readHeader(file);
+        var start = header.end();
+        var sortOrder = header.group(1) == null ? "" : header.group(1);
+
+        var offsets = new long[1024];
+        var rows = 0;
+        try (var in = openAt(file, start)) {
+            var reader = new RowReader(in, start);
+            while (reader.skip()) {
+                if (rows % PAGE_SIZE == 0) {
+                    var page = rows / PAGE_SIZE;
+                    if (page == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[page] = reader.getRowOffset();
+                }
+                if (rows == Integer.MAX_VALUE) {
+                    throw new IOException("Too many rows");
+                }
+                rows++;
+            }
+        }
+        return new PagedItems(file, Arrays.copyOf(offsets, (rows + PAGE_SIZE - 1) / PAGE_SIZE), rows, sortOrder);
+    }
+
+    /**
+     * Check that a file looks like a list file that can be paged, without reading through it.
+     *
+     * @param file list file
+     * @throws IOException if file cannot be read or doesn't start like a list file
+     */
+    public static void checkFile(File file) throws IOException {
+        readHeader(file);
+    }
+
+    /**
+     * Read start of file, up to its first row.
+     *
+     * @return match whose end is the offset rows start from, with sort order in group 1 if file is sorted
+     */
+    private static Matcher readHeader(File file) throws IOException {
+        var header = new byte[HEADER_LENGTH];
+        int headerLength;
+        try (var in = Files.newInputStream(file.toPath())) {
+            headerLength = in.readNBytes(header, 0, header.length);
+        }
+        // Each byte is one char, so match end is a file offset
+        var m = HEADER.matcher(new String(header, 0, headerLength, StandardCharsets.ISO_8859_1));
+        if (!m.lookingAt()) {
+            throw new IOException("Not a list file: " + file.getName());
+        }
+        return m;
+    }
+
+    /**
+     * Get item at given index. Rows that haven't been read yet are returned as placeholders, and replaced with a
+     * change once their page has been read in the background.
+     *
+     * @param index item index
+     * @return item, or placeholder if item is being read
+     */
+    @Override
+    public GroceryListItem get(int index) {
+        if (index >= fileRowCount) {
+            return added.get(index - fileRowCount);
+        }
+        Objects.checkIndex(index, fileRowCount);
+
+        var item = edited.get(index);
+        if (item != null) {
+            return item;
+        }
+
+        var page = index / PAGE_SIZE;
+        var rows = pages.get(page);
+        if (rows == null) {
+            rows = load(page);
+            prefetch(page - 1);
+            prefetch(page + 1);
+        }
+        return rows.get(index % PAGE_SIZE);
+    }
+
+    @Override
+    public int size() {
+        return fileRowCount + added.size();
+    }
+
+    /**
+     * Add item to end of list. Items can only be added to the end.
+     *
+     * @param index must be {@link #size()}
+     * @param item  item to add
+     */
+    @Override
+    public void add(int index, GroceryListItem item) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("items can only be added to the end");
+        }
+        added.add(item);
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    /**
+     * Keep an item that has been edited in place in memory until list is written. Edits to placeholders of rows
+     * that are still being read are ignored.
+     *
+     * @param index index of edited item
+     * @param item  edited item
+     */
+    public void markEdited(int index, GroceryListItem item) {
+        if (index >= fileRowCount) {
+            return;
+        }
+        var placeholders = loading.get(index / PAGE_SIZE);
+        if (placeholders == null || placeholders.get(index % PAGE_SIZE) != item) {
+            edited.put(index, item);
+        }
+    }
+
+    /**
+     * Whether any rows have been edited or added since list was read or written.
+     *
+     * @return true if list has unsaved changes
+     */
+    public boolean isModified() {
+        return !edited.isEmpty() || !added.isEmpty();
+    }
+
+    /**
+     * Get approximate number of rows currently held in memory.
+     *
+     * @return number of rows in memory
+     */
+    public int getLoadedRowCount() {
+        return pages.size() * PAGE_SIZE + edited.size() + added.size();
+    }
+
+    /**
+     * Get backing file.
+     *
+     * @return backing file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Write list to given file, then use it as the new backing file. Blocks until written, see {@link #save(File)}
+     * for writing in the background.
+     *
+     * @param target file to write
+     * @throws IOException if either file cannot be read or written, or target is a compressed file
+     */
+    public void write(File target) throws IOException {
+        var save = save(target);
+        save.write();
+        save.finish();
+    }
+
+    /**
+     * Prepare to write list to given file, copying edited and added rows.
+     *
+     * <p>The returned save can be written on any thread, and is then finished on the FX thread, which makes the
+     * written file the new backing file. Rows edited or added in the meantime are kept as unsaved changes.</p>
+     *
+     * @param target file to write
+     * @return save to write and then finish
+     * @throws IOException if target is a compressed file
+     */
+    public Save save(File target) throws IOException {
+        if (ListCompression.forFileName(target.getName()) != ListCompression.NONE) {
+            // Pages are found by file offset, which needs an uncompressed file
+            throw new IOException("Large lists cannot be saved compressed");
+        }
+        return new Save(target);
+    }
+
+    private int getPageRowCount(int page) {
+        return Math.min(PAGE_SIZE, fileRowCount - page * PAGE_SIZE);
+    }
+
+    private void prefetch(int page) {
+        if (page >= 0 && page < pageOffsets.length && !pages.containsKey(page)) {
+            load(page);
+        }
+    }
+
+    /**
+     * Start reading a page in the background if it isn't already.
+     *
+     * @return placeholder rows of page
+     */
+    private List<GroceryListItem> load(int page) {
+        var placeholders = loading.get(page);
+        if (placeholders == null) {
+            placeholders = new ArrayList<>();
+            loading.put(page, placeholders);
+            startLoad(page, placeholders);
+        }
+        return placeholders;
+    }
+
+    private void startLoad(int page, List<GroceryListItem> placeholders) {
+        var count = getPageRowCount(page);
+        while (placeholders.size() < count) {
+            placeholders.add(new GroceryListItem(LOADING_NAME, null, null));
+        }
+
+        var source = file;
+        var offsets = pageOffsets;
+        PREFETCHER.submit(() -> {
+            try {
+                var rows = readPage(source, offsets[page], count);
+                Platform.runLater(() -> loaded(page, offsets, rows));
+            } catch (IOException e) {
+                Platform.runLater(() -> loadFailed(page, offsets, e));
+            }
+        });
+    }
+
+    private void loaded(int page, long[] offsets, List<GroceryListItem> rows) {
+        // Backing file has been replaced in the meantime, page is read again from it
+        if (offsets != pageOffsets) {
+            return;
+        }
+        var placeholders = loading.remove(page);
+        pages.put(page, rows);
+
+        beginChange();
+        for (var i = 0; i < rows.size(); i++) {
+            if (!edited.containsKey(page * PAGE_SIZE + i)) {
+                nextSet(page * PAGE_SIZE + i, placeholders.get(i));
+            }
+        }
+        endChange();
+    }
+
+    private void loadFailed(int page, long[] offsets, IOException e) {
+        if (offsets != pageOffsets) {
+            return;
+        }
+        e.printStackTrace();
+        // Placeholders stay, so page isn't read again until file is written
+        var placeholders = loading.get(page);
+        beginChange();
+        for (var i = 0; i < placeholders.size(); i++) {
+            placeholders.get(i).setName("Could not read row: " + e.getMessage());
+            nextUpdate(page * PAGE_SIZE + i);
+        }
+        endChange();
+    }
+
+    private static List<GroceryListItem> readPage(File file, long offset, int count) throws IOException {
+        var items = new ArrayList<GroceryListItem>(count);
+        try (var in = openAt(file, offset)) {
+            var reader = new RowReader(in, offset);
+            for (var i = 0; i < count; i++) {
+                var row = reader.next();
+                if (row == null) {
+                    throw new IOException("File has changed since it was opened");
+                }
+                items.add(JsonListFormat.parseItem(new String(row, StandardCharsets.UTF_8)));
+            }
+        } catch (JSONParseException | JSONTypeException e) {
+            throw new IOException("Invalid row in " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return items;
+    }
+
+    private static InputStream openAt(File file, long offset) throws IOException {
+        var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
+    /**
+     * Writing list to a file, see {@link #save(File)}.
+     */
+    public class Save {
+        private final File target;
+        private final File source;
+        private final long[] sourceOffsets;
+        private final int sourceRowCount;
+        private final Map<Integer, GroceryListItem> editedRows = new HashMap<>();
+        private final List<GroceryListItem> addedRows = new ArrayList<>();
+        private long[] offsets;
+
+        private Save(File target) {
+            this.target = target;
+            this.source = file;
+            this.sourceOffsets = pageOffsets;
+            this.sourceRowCount = fileRowCount;
+            // Rows are edited in place on the FX thread, so copy them
+            edited.forEach((index, item) -> editedRows.put(index, item.copy()));
+            added.forEach(item -> addedRows.add(item.copy()));
+        }
+
+        /**
+         * Write file. Can be called from any thread.
+         *
+         * @throws IOException if either file cannot be read or written
+         */
+        public void write() throws IOException {
+            var tmp = target.toPath().resolveSibling(target.getName() + ".tmp");
+            var size = sourceRowCount + addedRows.size();
+            var written = new long[(size + PAGE_SIZE - 1) / PAGE_SIZE];
+
+            try (var in = openAt(source, sourceOffsets.length == 0 ? 0 : sourceOffsets[0]);
+                 var out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                var reader = new RowReader(in, 0);
+                if (!sortOrder.isEmpty()) {
+                    out.write(("{\"sort\":\"" + sortOrder + "\",\"items\":").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write('[');
+                for (var i = 0; i < size; i++) {
+                    byte[] row = null;
+                    if (i < sourceRowCount) {
+                        row = reader.next();
+                        if (row == null) {
+                            throw new IOException("File has changed since it was opened");
+                        }
+                    }
+                    var item = i < sourceRowCount ? editedRows.get(i) : addedRows.get(i - sourceRowCount);
+                    if (item != null) {
+                        row = JsonListFormat.formatItem(item).getBytes(StandardCharsets.UTF_8);
+                    }
+
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    if (i % PAGE_SIZE == 0) {
+                        written[i / PAGE_SIZE] = out.getCount();
+                    }
+                    out.write(row);
+                }
+                out.write(']');
+                if (!sortOrder.isEmpty()) {
+                    out.write('}');
+                }
+                out.write('\n');
+            }
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            offsets = written;
+        }
+
+        /**
+         * Use written file as the new backing file. Must be called on the FX thread after {@link #write()}.
+         */
+        public void finish() {
+            // Written edits are now in the file, shown pages get the edited rows
+            for (var it = edited.entrySet().iterator(); it.hasNext(); ) {
+                var e = it.next();
+                var copy = editedRows.get(e.getKey());
+                if (copy != null && copy.contentHash() == e.getValue().contentHash()) {
+                    var rows = pages.get(e.getKey() / PAGE_SIZE);
+                    if (rows != null) {
+                        rows.set(e.getKey() % PAGE_SIZE, e.getValue());
+                    }
+                    it.remove();
+                }
+            }
+
+            // Written added rows become file rows, and the pages they're on are put together from shown rows
+            var rowCount = sourceRowCount + addedRows.size();
+            var firstPage = sourceRowCount / PAGE_SIZE;
+            var partial = pages.remove(firstPage);
+            for (var page = firstPage; page * PAGE_SIZE < rowCount; page++) {
+                var rows = new ArrayList<GroceryListItem>(PAGE_SIZE);
+                for (var i = page * PAGE_SIZE; i < Math.min(rowCount, (page + 1) * PAGE_SIZE); i++) {
+                    if (i < sourceRowCount) {
+                        if (partial == null) {
+                            rows = null;
+                            break;
+                        }
+                        rows.add(partial.get(i % PAGE_SIZE));
+                        continue;
+                    }
+                    var item = added.get(i - sourceRowCount);
+                    var copy = addedRows.get(i - sourceRowCount);
+                    if (item.contentHash() != copy.contentHash()) {
+                        edited.put(i, item);
+                        item = copy;
+                    }
+                    rows.add(item);
+                }
+                if (rows != null && !loading.containsKey(page)) {
+                    pages.put(page, rows);
+                }
+            }
+            added.subList(0, addedRows.size()).clear();
+
+            // Items shown in the table are equal to the written ones, so no change needs to be fired
+            fileRowCount = rowCount;
+            pageOffsets = offsets;
+            file = target;
+            // Pages being read from the old file are read again from the new one
+            loading.forEach(PagedItems.this::startLoad);
+        }
+    }
+
+    /**
+     * Reads objects from the top level array of a list file, without parsing them.
+     */
+    private static class RowReader {
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 16];
+        private final ByteArrayOutputStream row = new ByteArrayOutputStream();
+        private long bufOffset;
+        private int pos;
+        private int limit;
+        private long rowOffset;
+
+        RowReader(InputStream in, long offset) {
+            this.in = in;
+            this.bufOffset = offset;
+        }
+
+        /**
+         * Read next row.
+         *
+         * @return bytes of next row's JSON object, or null at end of file
+         */
+        byte[] next() throws IOException {
+            row.reset();
+            return scan(true) ? row.toByteArray() : null;
+        }
+
+        /**
+         * Skip over next row, only remembering its offset.
+         *
+         * @return false at end of file
+         */
+        boolean skip() throws IOException {
+            return scan(false);
+        }
+
+        /**
+         * Get file offset of last read or skipped row.
+         *
+         * @return offset of row's opening brace
+         */
+        long getRowOffset() {
+            return rowOffset;
+        }
+
+        private boolean scan(boolean keep) throws IOException {
+            var depth = 0;
+            var inString = false;
+            var escape = false;
+            while (true) {
+                if (pos == limit) {
+                    bufOffset += limit;
+                    pos = 0;
+                    limit = Math.max(in.read(buf), 0);
+                    if (limit == 0) {
+                        return false;
+                    }
+                }
+
+                var start = pos;
+                while (pos < limit) {
+                    var b = buf[pos++];
+                    if (depth == 0) {
+                        // Skip array brackets, commas and whitespace between rows
+                        if (b == '{') {
+                            rowOffset = bufOffset + pos - 1;
+                            start = pos - 1;
+                            depth = 1;
+                        } else {
+                            start = pos;
+                        }
+                    } else if (inString) {
+                        if (escape) {
+                            escape = false;
+                        } else if (b == '\\') {
+                            escape = true;
+                        } else if (b == '"') {
+                            inString = false;
+                        }
+                    } else if (b == '"') {
+                        inString = true;
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if ((b == '}' || b == ']') && --depth == 0) {
+                        if (keep) {
+                            row.write(buf, start, pos - start);
+                        }
+                        return true;
+                    }
+                }
+                if (keep && depth > 0) {
+                    row.write(buf, start, pos - start);
+                }
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
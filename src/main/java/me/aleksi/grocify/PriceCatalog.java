@@ -0,0 +1,224 @@
+package me.aleksi.grocify;
+
+import me.aleksi.jayson.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent catalog of last known prices by item name.
+ *
+ * <p>Entries are kept in least-recently-used order. When the catalog grows past its capacity, the least frequently
+ * used entry among the oldest few is evicted, so commonly bought items survive even if they haven't been seen in a
+ * while.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class PriceCatalog {
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Path path;
+    private final int capacity;
+    private boolean modified;
+
+    /**
+     * Create a new empty catalog stored in given file, with default capacity.
+     *
+     * @param path file to store catalog in
+     */
+    public PriceCatalog(Path path) {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new empty catalog stored in given file.
+     *
+     * @param path     file to store catalog in
+     * @param capacity maximum number of entries
+     */
+    public PriceCatalog(Path path, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Look up last known price for given item name.
+     *
+     * @param name item name, case and surrounding whitespace are ignored
+     * @return last known price, or null if none
+     */
+    public BigDecimal lookup(String name) {
+        var entry = entries.get(normalize(name));
+        return entry == null ? null : entry.price;
+    }
+
+    /**
+     * Record a price for given item name. Null prices and blank names are ignored.
+     *
+     * @param name  item name
+     * @param price item price per unit
+     */
+    public void record(String name, BigDecimal price) {
+        var key = normalize(name);
+        if (key.isEmpty() || price == null) {
+            return;
+        }
+
+        var entry = entries.get(key);
+        if (entry == null) {
+            entries.put(key, new Entry(price, 1));
+            evict();
+            modified = true;
+        } else {
+            entry.uses++;
+            if (entry.price.compareTo(price) != 0) {
+                entry.price = price;
+            }
+            // Use counts decide what's evicted, so they're saved too
+            modified = true;
+        }
+    }
+
+    /**
+     * Record prices of all given items, such as those of a saved list.
+     *
+     * <p>Only prices that are new or differ from the catalog count as uses, so saving the same list often doesn't
+     * make its items outlive prices that are actually entered.</p>
+     *
+     * @param items items to record
+     */
+    public void recordAll(Iterable<GroceryListItem> items) {
+        for (var item : items) {
+            var entry = entries.get(normalize(item.getName()));
+            if (entry == null || item.getPricePerUnit() == null || entry.price.compareTo(item.getPricePerUnit()) != 0) {
+                record(item.getName(), item.getPricePerUnit());
+            }
+        }
+    }
+
+    /**
+     * Record prices of given items whose names are not in the catalog yet, such as those of an opened list. Known
+     * prices are left alone, since opened lists may be older than them.
+     *
+     * @param items items to record
+     */
+    public void recordMissing(Iterable<GroceryListItem> items) {
+        for (var item : items) {
+            var key = normalize(item.getName());
+            if (!key.isEmpty() && item.getPricePerUnit() != null && !entries.containsKey(key)) {
+                // Not counted as a use, so these are evicted before prices that have been entered
+                entries.put(key, new Entry(item.getPricePerUnit(), 0));
+                evict();
+                modified = true;
+            }
+        }
+    }
+
+    /**
+     * Get number of entries in catalog.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        while (entries.size() > capacity) {
+            // Oldest entries come first, pick the least used of them
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            String victim = null;
+            var victimUses = Integer.MAX_VALUE;
+            for (var i = 0; i < EVICTION_SAMPLE && it.hasNext(); i++) {
+                var e = it.next();
+                if (e.getValue().uses < victimUses) {
+                    victim = e.getKey();
+                    victimUses = e.getValue().uses;
+                }
+            }
+            entries.remove(victim);
+        }
+    }
+
+    /**
+     * Load catalog from its file, replacing current entries. A missing file is not an error.
+     *
+     * @throws IOException if file cannot be read or parsed
+     */
+    public void load() throws IOException {
+        var opts = new JSONReader.ReadOptions();
+        opts.readNumbersAsBigDecimal = true;
+
+        try {
+            var res = new JSONReader(opts).parse(Files.readString(path, StandardCharsets.UTF_8));
+            entries.clear();
+            for (var e : res.getArray()) {
+                var o = e.getObject();
+                entries.put(o.get("name").getString(),
+                    new Entry((BigDecimal) o.get("price").getNumber(), o.get("uses").getNumber().intValue()));
+            }
+            evict();
+            modified = false;
+        } catch (NoSuchFileException e) {
+            // Nothing saved yet
+        } catch (JSONParseException | JSONTypeException e) {
+            throw new IOException("Invalid price catalog: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Save catalog to its file if it has changed since last load or save.
+     *
+     * @throws IOException if file cannot be written
+     */
+    public void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+
+        // Least recently used first, so loading restores the same order
+        var arr = new JSONArray();
+        entries.forEach((name, entry) -> arr.add(new JSONObject()
+            .put("name", name)
+            .put("price", entry.price)
+            .put("uses", entry.uses)));
+
+        Files.createDirectories(path.getParent());
+        try (var writer = new PrintWriter(path.toFile(), StandardCharsets.UTF_8)) {
+            writer.write(arr.toJSONString());
+        }
+        modified = false;
+    }
+
+    private static class Entry {
+        BigDecimal price;
+        int uses;
+
+        Entry(BigDecimal price, int uses) {
+            this.price = price;
+            this.uses = uses;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package me.aleksi.grocify;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary snapshot of an entire session.
+ *
+ * <p>Holds every open list's contents along with the modification time and size its file had when the contents were
+ * read, so lists whose files haven't changed can be restored without parsing them again.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class SessionSnapshot {
+    private static final int MAGIC = 0x47524F43; // "GROC"
+    private static final int VERSION = 4;
+
+    private static final int KIND_FILE = 0;
+    private static final int KIND_DATABASE = 1;
+
+    private static final int HAS_AMOUNT = 1;
+    private static final int HAS_PRICE = 2;
+
+    private final List<Entry> entries;
+    private final int selectedIndex;
+
+    /**
+     * Create a new snapshot.
+     *
+     * @param entries       entries in tab order
+     * @param selectedIndex index of selected tab, or -1
+     */
+    public SessionSnapshot(List<Entry> entries, int selectedIndex) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.selectedIndex = selectedIndex;
+    }
+
+    /**
+     * Read a snapshot from file.
+     *
+     * @param path snapshot file
+     * @return the snapshot
+     * @throws IOException if file cannot be read or is not a valid snapshot
+     */
+    public static SessionSnapshot read(Path path) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a valid session snapshot");
+            }
+
+            var selectedIndex = in.readInt();
+            var count = in.readInt();
+            var entries = new ArrayList<Entry>(count);
+            for (var i = 0; i < count; i++) {
+                if (in.readByte() == KIND_DATABASE) {
+                    entries.add(Entry.database(readString(in)));
+                    continue;
+                }
+
+                var file = new File(readString(in));
+                var lastModified = in.readLong();
+                var size = in.readLong();
+                var scrollIndex = in.readInt();
+                var sortOrder = readString(in);
+
+                List<GroceryListItem> items = null;
+                var itemCount = in.readInt();
+                if (itemCount >= 0) {
+                    items = new ArrayList<>(itemCount);
+                    for (var j = 0; j < itemCount; j++) {
+                        items.add(readItem(in));
+                    }
+                }
+                entries.add(new Entry(file, lastModified, size, scrollIndex, sortOrder, items));
+            }
+            return new SessionSnapshot(entries, selectedIndex);
+        }
+    }
+
+    /**
+     * Read an item written by {@link #writeItem(DataOutput, GroceryListItem)}.
+     *
+     * @param in input to read from
+     * @return item
+     * @throws IOException if item cannot be read
+     */
+    static GroceryListItem readItem(DataInput in) throws IOException {
+        var flags = in.readByte();
+        var id = readString(in);
+        var version = in.readLong();
+        var name = readString(in);
+        var amount = (flags & HAS_AMOUNT) != 0 ? in.readInt() : null;
+        var price = (flags & HAS_PRICE) != 0 ? new BigDecimal(readString(in)) : null;
+        return new GroceryListItem(id, version, name, amount, price);
+    }
+
+    /**
+     * Write an item in compact binary form.
+     *
+     * @param out  output to write to
+     * @param item item to write
+     * @throws IOException if item cannot be written
+     */
+    static void writeItem(DataOutput out, GroceryListItem item) throws IOException {
+        var flags = (item.getAmount() != null ? HAS_AMOUNT : 0) | (item.getPricePerUnit() != null ? HAS_PRICE : 0);
+        out.writeByte(flags);
+        writeString(out, item.getId());
+        out.writeLong(item.getVersion());
+        writeString(out, item.getName() == null ? "" : item.getName());
+        if (item.getAmount() != null) {
+            out.writeInt(item.getAmount());
+        }
+        if (item.getPricePerUnit() != null) {
+            writeString(out, item.getPricePerUnit().toString());
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // DataOutput.writeUTF can't handle strings longer than 64 KiB
+    static void writeString(DataOutput out, String str) throws IOException {
+        var bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write snapshot to file, replacing the previous one only once the new one is completely written.
+     *
+     * @param path snapshot file
+     * @throws IOException if file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(selectedIndex);
+            out.writeInt(entries.size());
+            for (var entry : entries) {
+                if (entry.databaseList != null) {
+                    out.writeByte(KIND_DATABASE);
+                    writeString(out, entry.databaseList);
+                    continue;
+                }
+
+                out.writeByte(KIND_FILE);
+                writeString(out, entry.file.getPath());
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.size);
+                out.writeInt(entry.scrollIndex);
+                writeString(out, entry.sortOrder);
+                if (entry.items == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.items.size());
+                    for (var item : entry.items) {
+                        writeItem(out, item);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get entries in tab order.
+     *
+     * @return unmodifiable list of entries
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get index of selected tab.
+     *
+     * @return selected tab index, or -1 if none
+     */
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    /**
+     * Snapshot of a single list.
+     */
+    public static class Entry {
+        private final File file;
+        private final long lastModified;
+        private final long size;
+        private final int scrollIndex;
+        private final String sortOrder;
+        private final List<GroceryListItem> items;
+        private final String databaseList;
+
+        /**
+         * Create a new entry for a list kept in a file.
+         *
+         * @param file         list file
+         * @param lastModified file modification time when items were read
+         * @param size         file size when items were read
+         * @param scrollIndex  index of first visible row
+         * @param sortOrder    sort order of list, see {@link GroceryList#getSortOrderString()}
+         * @param items        list contents, or null if list must be read from file
+         */
+        public Entry(File file, long lastModified, long size, int scrollIndex, String sortOrder,
+                     List<GroceryListItem> items) {
+            this(file, lastModified, size, scrollIndex, sortOrder, items, null);
+        }
+
+        private Entry(File file, long lastModified, long size, int scrollIndex, String sortOrder,
+                      List<GroceryListItem> items, String databaseList) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.scrollIndex = scrollIndex;
+            this.sortOrder = sortOrder;
+            this.items = items;
+            this.databaseList = databaseList;
+        }
+
+        /**
+         * Create a new entry for a list kept in the list database. Its contents are always read from the database.
+         *
+         * @param name list name in database
+         * @return new entry
+         */
+        public static Entry database(String name) {
+            return new Entry(null, 0, 0, 0, "", null, name);
+        }
+
+        /**
+         * Get name of list in list database.
+         *
+         * @return list name, or null if list is kept in a file
+         */
+        public String getDatabaseList() {
+            return databaseList;
+        }
+
+        /**
+         * Get list file.
+         *
+         * @return list file, or null if list is kept in the list database
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Get index of first visible row.
+         *
+         * @return first visible row index
+         */
+        public int getScrollIndex() {
+            return scrollIndex;
+        }
+
+        /**
+         * Get sort order of list.
+         *
+         * @return sort order, see {@link GroceryList#getSortOrderString()}
+         */
+        public String getSortOrder() {
+            return sortOrder;
+        }
+
+        /**
+         * Get snapshotted list contents if file hasn't changed since.
+         *
+         * @return list contents, or null if file must be read again
+         */
+        public List<GroceryListItem> getItemsIfCurrent() {
+            if (items == null || file.lastModified() != lastModified || file.length() != size) {
+                return null;
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.aleksi.grocify;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Simple persistent application settings.
+ *
+ * <p>Stored as a properties file. Missing or invalid values fall back to the given defaults.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class Settings {
+    private final Properties properties = new Properties();
+    private final Path path;
+
+    /**
+     * Create new empty settings stored in given file.
+     *
+     * @param path file to store settings in
+     */
+    public Settings(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Load settings from file. A missing file is not an error.
+     *
+     * @throws IOException if file cannot be read
+     */
+    public void load() throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.clear();
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            // Nothing saved yet
+        }
+    }
+
+    /**
+     * Save settings to file.
+     *
+     * @throws IOException if file cannot be written
+     */
+    public void save() throws IOException {
+        Files.createDirectories(path.getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Grocify settings");
+        }
+    }
+
+    /**
+     * Get a boolean setting.
+     *
+     * @param key          setting key
+     * @param defaultValue value to return if setting is not set
+     * @return setting value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        var value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Set a boolean setting.
+     *
+     * @param key   setting key
+     * @param value new value
+     */
+    public void setBoolean(String key, boolean value) {
+        properties.setProperty(key, Boolean.toString(value));
+    }
+
+    /**
+     * Get an integer setting.
+     *
+     * @param key          setting key
+     * @param defaultValue value to return if setting is not set or not a valid integer
+     * @return setting value
+     */
+    public int getInt(String key, int defaultValue) {
+        var value = properties.getProperty(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.strip());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a string setting.
+     *
+     * @param key          setting key
+     * @param defaultValue value to return if setting is not set
+     * @return setting value
+     */
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Set a string setting.
+     *
+     * @param key   setting key
+     * @param value new value
+     */
+    public void setString(String key, String value) {
+        properties.setProperty(key, value);
+    }
+}
@@ -0,0 +1,48 @@
+package me.aleksi.grocify;
+
+import javafx.application.Platform;
+
+import java.time.Instant;
+
+/**
+ * Startup milestones, for measuring how long Grocify takes to start.
+ *
+ * <p>Times are measured from the start of the process. They're printed if the {@code grocify.startupTiming} system
+ * property is set to true, as lines like "Startup: first frame after 812 ms". If {@code grocify.exitAfterStartup} is
+ * set to true, Grocify exits once it's interactive without saving anything, for benchmarks and class data sharing
+ * training runs.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+final class StartupTiming {
+    // Process start isn't known everywhere, loading this class is close enough then
+    private static final Instant START = ProcessHandle.current().info().startInstant().orElseGet(Instant::now);
+
+    private StartupTiming() {
+    }
+
+    /**
+     * Record that the first frame has been drawn. Must be called on the FX thread.
+     */
+    static void firstFrame() {
+        print("first frame");
+    }
+
+    /**
+     * Record that the window can take input, exiting if asked to. Must be called on the FX thread.
+     */
+    static void interactive() {
+        print("interactive");
+        if (Boolean.getBoolean("grocify.exitAfterStartup")) {
+            Platform.exit();
+        }
+    }
+
+    private static void print(String milestone) {
+        if (Boolean.getBoolean("grocify.startupTiming")) {
+            System.out.println("Startup: " + milestone + " after " + (Instant.now().toEpochMilli()
+                - START.toEpochMilli()) + " ms");
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package me.aleksi.grocify;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import me.aleksi.jayson.JSONArray;
+import me.aleksi.jayson.JSONObject;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Log of row changes to a single list, for sending them to other instances.
+ *
+ * <p>Every change gets the next sequence number of the list, and only the latest change of each row is kept, so the
+ * changes since a given sequence number are as many as the rows changed since. Changes are also stamped with a Lamport
+ * clock and the instance they were made in. When the same row is changed in several instances, the change with the
+ * greatest stamp wins everywhere.</p>
+ *
+ * <p>Changes are recorded from list change events on the FX thread. Everything else is safe to call from any
+ * thread.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+class SyncLog implements ListChangeListener<GroceryListItem> {
+    private final ObservableList<GroceryListItem> items;
+    private final Consumer<Consumer<List<GroceryListItem>>> modifier;
+    private final String origin;
+    // Changes to the log start from scratch whenever a list is opened, peers notice from this
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Map<String, Entry> rows = new HashMap<>();
+    private final NavigableMap<Long, Entry> bySeq = new TreeMap<>();
+    private long seq;
+    private long clock;
+
+    /**
+     * Create a new empty log for given list, and start recording its changes. Must be called on the FX thread.
+     *
+     * @param list   list to record
+     * @param origin identifier of this instance
+     */
+    SyncLog(GroceryList list, String origin) {
+        this(list.getData(), list.getUpdateQueue()::modify, origin);
+    }
+
+    /**
+     * Create a new empty log for given rows, and start recording their changes.
+     *
+     * @param items    rows to record
+     * @param modifier runs modifications of received changes on the thread rows are modified on, see
+     *                 {@link ListUpdateQueue#modify(Consumer)}
+     * @param origin   identifier of this instance
+     */
+    SyncLog(ObservableList<GroceryListItem> items, Consumer<Consumer<List<GroceryListItem>>> modifier,
+            String origin) {
+        this.items = items;
+        this.modifier = modifier;
+        this.origin = origin;
+        items.addListener(this);
+    }
+
+    /**
+     * Stop recording changes.
+     */
+    void close() {
+        items.removeListener(this);
+    }
+
+    String getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public void onChanged(Change<? extends GroceryListItem> c) {
+        // Rows that are replaced or moved are removed and added again, so only removals of rows that stay gone count.
+        // Moves are not sent, only where new rows are added.
+        var removed = new LinkedHashMap<String, GroceryListItem>();
+        var changed = new LinkedHashMap<String, Integer>();
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue;
+            }
+            if (c.wasUpdated()) {
+                for (var i = c.getFrom(); i < c.getTo(); i++) {
+                    changed.put(c.getList().get(i).getId(), i);
+                }
+                continue;
+            }
+            for (var item : c.getRemoved()) {
+                removed.put(item.getId(), item);
+            }
+            for (var i = c.getFrom(); i < c.getTo(); i++) {
+                changed.put(c.getList().get(i).getId(), i);
+            }
+        }
+
+        var items = c.getList();
+        synchronized (this) {
+            for (var id : removed.keySet()) {
+                if (!changed.containsKey(id)) {
+                    recordLocal(id, null, null);
+                }
+            }
+            for (var change : changed.entrySet()) {
+                var index = change.getValue();
+                // Indices of earlier changes may have shifted, find the row again if needed
+                if (index >= items.size() || !items.get(index).getId().equals(change.getKey())) {
+                    index = indexOf(items, change.getKey());
+                    if (index < 0) {
+                        continue;
+                    }
+                }
+                var item = items.get(index);
+                var old = removed.get(change.getKey());
+                if (old != null && old.contentHash() == item.contentHash()) {
+                    continue;
+                }
+                recordLocal(change.getKey(), item, index == 0 ? null : items.get(index - 1).getId());
+            }
+        }
+    }
+
+    private static int indexOf(List<? extends GroceryListItem> items, String id) {
+        for (var i = 0; i < items.size(); i++) {
+            if (items.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void recordLocal(String id, GroceryListItem item, String after) {
+        var entry = rows.get(id);
+        // Changes received from peers are already recorded once they show up here
+        if (entry != null && (item == null ? entry.item == null
+            : entry.item != null && entry.item.contentHash() == item.contentHash())) {
+            return;
+        }
+        record(new Entry(id, item == null ? null : item.copy(), after, ++clock, origin));
+    }
+
+    private void record(Entry entry) {
+        var old = rows.put(entry.id, entry);
+        if (old != null) {
+            bySeq.remove(old.seq);
+        }
+        entry.seq = ++seq;
+        bySeq.put(entry.seq, entry);
+    }
+
+    /**
+     * Get changes made since given sequence number.
+     *
+     * <p>Changes made by the asking instance are left out, since they can never win over what it already has.</p>
+     *
+     * @param epoch  epoch the sequence number is from, changes since the start are sent if it's not the current one
+     * @param since  sequence number of last change already seen
+     * @param origin identifier of asking instance
+     * @return JSON object with current epoch and sequence number, and changed and deleted rows
+     */
+    synchronized JSONObject changesSince(String epoch, long since, String origin) {
+        if (!this.epoch.equals(epoch)) {
+            since = 0;
+        }
+
+        var changed = new JSONArray();
+        var deleted = new JSONArray();
+        for (var entry : bySeq.tailMap(since, false).values()) {
+            if (entry.origin.equals(origin)) {
+                continue;
+            }
+            var json = entry.item == null ? new JSONObject().put("id", entry.id) : JsonListFormat.toJSON(entry.item);
+            json.put("after", entry.after).put("clock", entry.clock).put("origin", entry.origin);
+            (entry.item == null ? deleted : changed).add(json);
+        }
+        return new JSONObject()
+            .put("epoch", this.epoch)
+            .put("seq", seq)
+            .put("rows", changed)
+            .put("deleted", deleted);
+    }
+
+    /**
+     * Take changes received from a peer into the log, and apply those that win over changes already seen.
+     *
+     * @param changes JSON object from {@link #changesSince(String, long, String)} of peer
+     * @throws JSONTypeException if changes are not valid
+     */
+    void receive(JSONObject changes) throws JSONTypeException {
+        var received = new ArrayList<Entry>();
+        for (var row : changes.get("rows").getArray()) {
+            var json = row.getObject();
+            received.add(toEntry(json, JsonListFormat.toItem(json)));
+        }
+        for (var row : changes.get("deleted").getArray()) {
+            received.add(toEntry(row.getObject(), null));
+        }
+
+        var winners = new ArrayList<Entry>();
+        synchronized (this) {
+            for (var entry : received) {
+                clock = Math.max(clock, entry.clock);
+                var current = rows.get(entry.id);
+                if (current == null || entry.isNewerThan(current)) {
+                    record(entry);
+                    winners.add(entry);
+                }
+            }
+        }
+        if (!winners.isEmpty()) {
+            modifier.accept(items -> apply(items, winners));
+        }
+    }
+
+    private static Entry toEntry(JSONObject json, GroceryListItem item) throws JSONTypeException {
+        var after = json.get("after");
+        return new Entry(json.get("id").getString(), item, after == null ? null : after.getString(),
+            json.get("clock").getNumber().longValue(), json.get("origin").getString());
+    }
+
+    /**
+     * Apply received changes on the FX thread, skipping those a later local change has replaced in the meantime.
+     */
+    private void apply(List<GroceryListItem> items, List<Entry> entries) {
+        var indices = new HashMap<String, Integer>(items.size() * 2);
+        for (var i = 0; i < items.size(); i++) {
+            indices.put(items.get(i).getId(), i);
+        }
+
+        var removed = new HashSet<String>();
+        var inserted = new ArrayList<Entry>();
+        synchronized (this) {
+            for (var entry : entries) {
+                if (rows.get(entry.id) != entry) {
+                    continue;
+                }
+                var index = indices.get(entry.id);
+                if (entry.item == null) {
+                    if (index != null) {
+                        removed.add(entry.id);
+                    }
+                } else if (index != null) {
+                    items.set(index, entry.item.copy());
+                } else {
+                    inserted.add(entry);
+                }
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            items.removeIf(item -> removed.contains(item.getId()));
+        }
+        for (var entry : inserted) {
+            var index = entry.after == null ? 0 : indexOf(items, entry.after) + 1;
+            if (index == 0 && entry.after != null) {
+                // Row it followed is gone here
+                index = items.size();
+            }
+            items.add(index, entry.item.copy());
+        }
+    }
+
+    private static class Entry {
+        private final String id;
+        // Null if row was deleted
+        private final GroceryListItem item;
+        private final String after;
+        private final long clock;
+        private final String origin;
+        private long seq;
+
+        Entry(String id, GroceryListItem item, String after, long clock, String origin) {
+            this.id = id;
+            this.item = item;
+            this.after = after;
+            this.clock = clock;
+            this.origin = origin;
+        }
+
+        boolean isNewerThan(Entry other) {
+            return clock != other.clock ? clock > other.clock : origin.compareTo(other.origin) > 0;
+        }
+    }
+}
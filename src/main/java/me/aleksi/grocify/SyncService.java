@@ -0,0 +1,335 @@
+package me.aleksi.grocify;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.aleksi.jayson.JSONParseException;
+import me.aleksi.jayson.JSONTypeException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps open lists in sync with other Grocify instances on the local network.
+ *
+ * <p>Each instance serves the changes to its open lists over HTTP, and asks each of its peers every few seconds for
+ * the changes to the lists it has open since the last time it asked. Lists are matched by name, and rows by identity.
+ * Only changed rows are sent, see {@link SyncLog}, so lists should start out the same everywhere, for example by
+ * opening the same file. Rows of files saved by older versions get the same identities everywhere too, see
+ * {@link JsonListFormat}.</p>
+ *
+ * <p>Peers are asked all at once. A peer that doesn't answer is asked again less and less often, up to once a
+ * minute, so offline peers don't hold up syncing with others.</p>
+ *
+ * <p>Requests are not authenticated, so the service should only be used in a trusted network.</p>
+ *
+ * @author Aleksi Kervinen
+ * @version 1.0-SNAPSHOT
+ */
+public class SyncService {
+    /**
+     * Port used if none is set.
+     */
+    public static final int DEFAULT_PORT = 47120;
+    private static final String CHANGES_PATH = "/sync/changes";
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    // Longest wait before asking a peer that hasn't answered again
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final String origin = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Map<GroceryList, SyncLog> logs = new ConcurrentHashMap<>();
+    // List names are only read on the FX thread, so logs are looked up by name from a copy made there
+    private volatile Map<String, SyncLog> logsByName = Map.of();
+    // Only used on the poll thread, except for cursors updated as answers arrive
+    private final Map<SyncLog, Map<String, Cursor>> cursors = new IdentityHashMap<>();
+    private final Map<String, Backoff> backoff = new ConcurrentHashMap<>();
+    private volatile List<String> peers = List.of();
+    private HttpServer server;
+    private ScheduledExecutorService poller;
+
+    /**
+     * Start serving changes on given port and asking peers for theirs.
+     *
+     * @param port  port to listen on
+     * @param peers addresses of peers, as host:port
+     * @throws IOException if port cannot be listened on
+     */
+    public synchronized void start(int port, List<String> peers) throws IOException {
+        if (server != null) {
+            stop();
+        }
+        setPeers(peers);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CHANGES_PATH, this::handleChanges);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            var thread = new Thread(r, "Grocify sync server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+
+        var client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "Grocify sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> poll(client), POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop syncing, and stop recording changes to lists.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        poller.shutdownNow();
+        server = null;
+        poller = null;
+        logs.values().forEach(SyncLog::close);
+        logs.clear();
+        logsByName = Map.of();
+    }
+
+    /**
+     * Whether service has been started.
+     *
+     * @return true if service is running
+     */
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Set peers to sync with.
+     *
+     * @param peers addresses of peers, as host:port
+     */
+    public void setPeers(List<String> peers) {
+        this.peers = List.copyOf(peers);
+    }
+
+    /**
+     * Start syncing given list, recording changes made to it from now on. Must be called on the FX thread.
+     *
+     * <p>Nothing happens if service isn't running, or list is paged.</p>
+     *
+     * @param list list to sync
+     */
+    public void attach(GroceryList list) {
+        if (isRunning() && list.getPagedItems() == null) {
+            logs.computeIfAbsent(list, l -> new SyncLog(l, origin));
+            updateNames();
+        }
+    }
+
+    /**
+     * Stop syncing given list. Must be called on the FX thread.
+     *
+     * @param list list to stop syncing
+     */
+    public void detach(GroceryList list) {
+        var log = logs.remove(list);
+        if (log != null) {
+            log.close();
+            updateNames();
+        }
+    }
+
+    /**
+     * Sync given list under its new name. Must be called on the FX thread after list has been renamed.
+     *
+     * @param list renamed list
+     */
+    public void renamed(GroceryList list) {
+        if (logs.containsKey(list)) {
+            updateNames();
+        }
+    }
+
+    private void updateNames() {
+        var names = new HashMap<String, SyncLog>();
+        logs.forEach((list, log) -> names.putIfAbsent(list.getName(), log));
+        logsByName = Map.copyOf(names);
+    }
+
+    /**
+     * Whether given list is being synced.
+     *
+     * @param list list to check
+     * @return true if list is attached to a running service
+     */
+    public boolean isAttached(GroceryList list) {
+        return list != null && logs.containsKey(list);
+    }
+
+    private void handleChanges(HttpExchange exchange) throws IOException {
+        try {
+            var query = parseQuery(exchange.getRequestURI().getRawQuery());
+            var log = query.get("list") == null ? null : logsByName.get(query.get("list"));
+            if (log == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            long since;
+            try {
+                since = Long.parseLong(query.getOrDefault("since", "0"));
+            } catch (NumberFormatException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            var body = log.changesSince(query.getOrDefault("epoch", ""), since, query.getOrDefault("origin", ""))
+                .toJSONString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+        for (var param : query.split("&")) {
+            var eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Ask every peer for changes to every open list at once, and wait until all have answered or timed out.
+     */
+    private void poll(HttpClient client) {
+        var current = logsByName;
+        // Forget how far peers were seen for lists that have been closed
+        var open = Collections.newSetFromMap(new IdentityHashMap<SyncLog, Boolean>());
+        open.addAll(current.values());
+        cursors.keySet().retainAll(open);
+
+        var now = System.currentTimeMillis();
+        var requests = new ArrayList<CompletableFuture<?>>();
+        for (var peer : peers) {
+            var peerBackoff = backoff.get(peer);
+            if (peerBackoff != null && peerBackoff.retryAt > now) {
+                continue;
+            }
+            for (var entry : current.entrySet()) {
+                var log = entry.getValue();
+                var logCursors = cursors.computeIfAbsent(log, l -> new ConcurrentHashMap<>());
+                var cursor = logCursors.getOrDefault(peer, Cursor.START);
+                HttpRequest request;
+                try {
+                    request = HttpRequest.newBuilder(URI.create("http://" + peer + CHANGES_PATH
+                        + "?list=" + URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8)
+                        + "&epoch=" + URLEncoder.encode(cursor.epoch, StandardCharsets.UTF_8)
+                        + "&since=" + cursor.seq
+                        + "&origin=" + origin)).timeout(TIMEOUT).build();
+                } catch (IllegalArgumentException e) {
+                    // Address is invalid
+                    continue;
+                }
+
+                requests.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                    .handle((response, error) -> {
+                        if (error != null) {
+                            // Peer is offline, try again later
+                            failed(peer);
+                            return null;
+                        }
+                        backoff.remove(peer);
+                        if (response.statusCode() != 200) {
+                            // Peer doesn't have this list open
+                            return null;
+                        }
+
+                        try {
+                            var changes = JsonListFormat.newReader().parse(response.body()).getObject();
+                            log.receive(changes);
+                            logCursors.put(peer, new Cursor(changes.get("epoch").getString(),
+                                changes.get("seq").getNumber().longValue()));
+                        } catch (JSONParseException | JSONTypeException e) {
+                            e.printStackTrace();
+                        }
+                        return null;
+                    }));
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void failed(String peer) {
+        var now = System.currentTimeMillis();
+        backoff.compute(peer, (p, old) -> {
+            // Requests for other lists fail in the same round, count them once
+            if (old != null && old.retryAt > now) {
+                return old;
+            }
+            var failures = old == null ? 1 : old.failures + 1;
+            var delay = Math.min(POLL_INTERVAL_MILLIS << Math.min(failures, 16), MAX_BACKOFF_MILLIS);
+            return new Backoff(failures, now + delay);
+        });
+    }
+
+    /**
+     * Peer that hasn't answered, and when to ask it again.
+     */
+    private static class Backoff {
+        private final int failures;
+        private final long retryAt;
+
+        Backoff(int failures, long retryAt) {
+            this.failures = failures;
+            this.retryAt = retryAt;
+        }
+    }
+
+    /**
+     * Last change seen from a peer.
+     */
+    private static class Cursor {
+        private static final Cursor START = new Cursor("", 0);
+
+        private final String epoch;
+        private final long seq;
+
+        Cursor(String epoch, long seq) {
+            this.epoch = epoch;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package me.aleksi.grocify;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFinderTest {
+    private static List<List<String>> groupNames(DuplicateFinder finder) {
+        var groups = new ArrayList<List<String>>();
+        for (var group : finder.groups()) {
+            groups.add(group.stream().map(GroceryListItem::getName).sorted().collect(Collectors.toList()));
+        }
+        groups.sort(Comparator.comparing(g -> g.get(0)));
+        return groups;
+    }
+
+    private static DuplicateFinder finderOf(String... names) {
+        var finder = new DuplicateFinder();
+        for (var name : names) {
+            finder.add(new GroceryListItem(name));
+        }
+        return finder;
+    }
+
+    @Test
+    void distanceCountsEdits() {
+        assertEquals(0, DuplicateFinder.distance("milk", "milk"));
+        assertEquals(1, DuplicateFinder.distance("milk", "milks"));
+        assertEquals(1, DuplicateFinder.distance("milk", "mil"));
+        assertEquals(1, DuplicateFinder.distance("milk", "silk"));
+        assertEquals(3, DuplicateFinder.distance("", "abc"));
+    }
+
+    @Test
+    void distanceCountsTranspositionAsOneEdit() {
+        assertEquals(1, DuplicateFinder.distance("milk", "mlik"));
+        // Unrestricted variant, so an edit between swapped letters still counts as two
+        assertEquals(2, DuplicateFinder.distance("ca", "abc"));
+    }
+
+    @Test
+    void distanceIsSymmetric() {
+        var words = List.of("bananas", "banaans", "bread", "broad", "", "b");
+        for (var a : words) {
+            for (var b : words) {
+                assertEquals(DuplicateFinder.distance(a, b), DuplicateFinder.distance(b, a), a + " / " + b);
+            }
+        }
+    }
+
+    @Test
+    void normalizeIgnoresCaseAndWhitespace() {
+        assertEquals("oat milk", DuplicateFinder.normalize("  Oat   MILK "));
+        assertEquals("", DuplicateFinder.normalize(null));
+    }
+
+    @Test
+    void groupsNormalizedAndMisspelledNames() {
+        var groups = groupNames(finderOf("Milk", "milk ", "Mlik", "Bread", "Butter"));
+        assertEquals(List.of(List.of("Milk", "Mlik", "milk ")), groups);
+    }
+
+    @Test
+    void shortNamesMustMatchExactly() {
+        assertTrue(groupNames(finderOf("tea", "tee", "pea")).isEmpty());
+        assertEquals(List.of(List.of("Tea", "tea")), groupNames(finderOf("Tea", "tea")));
+    }
+
+    @Test
+    void similarityIsTransitiveWithinGroup() {
+        // Each is within two edits of the next, but not of the one after that
+        var groups = groupNames(finderOf("chocolate", "chocolat", "chocolt", "cheddar"));
+        assertEquals(List.of(List.of("chocolat", "chocolate", "chocolt")), groups);
+    }
+
+    @Test
+    void removedItemsAreNotGrouped() {
+        var finder = new DuplicateFinder();
+        var milk = new GroceryListItem("Milk");
+        finder.add(milk);
+        finder.add(new GroceryListItem("milk"));
+        finder.remove(milk);
+        assertTrue(finder.groups().isEmpty());
+    }
+
+    @Test
+    void renamedItemsAreRegrouped() {
+        var finder = new DuplicateFinder();
+        var item = new GroceryListItem("Bread");
+        finder.add(item);
+        finder.add(new GroceryListItem("Butter"));
+        item.setName("butter");
+        finder.update(item);
+        assertEquals(List.of(List.of("Butter", "butter")), groupNames(finder));
+    }
+
+    @Test
+    void findSimilarByName() {
+        var finder = finderOf("Yoghurt", "Eggs");
+        var similar = finder.findSimilar("yogurt");
+        assertEquals(1, similar.size());
+        assertEquals("Yoghurt", similar.get(0).getName());
+        assertTrue(finder.findSimilar("").isEmpty());
+    }
+}
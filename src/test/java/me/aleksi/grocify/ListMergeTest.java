@@ -0,0 +1,195 @@
+package me.aleksi.grocify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListMergeTest {
+    @TempDir
+    Path dir;
+
+    private static GroceryListItem item(String id, long version, String name) {
+        return new GroceryListItem(id, version, name, null, null);
+    }
+
+    private static List<GroceryListItem> copy(List<GroceryListItem> items) {
+        return items.stream().map(GroceryListItem::copy).collect(Collectors.toList());
+    }
+
+    private static List<String> names(List<GroceryListItem> items) {
+        return items.stream().map(GroceryListItem::getName).collect(Collectors.toList());
+    }
+
+    private static GroceryListItem find(List<GroceryListItem> items, String id) {
+        return items.stream().filter(i -> i.getId().equals(id)).findFirst().orElse(null);
+    }
+
+    private static List<GroceryListItem> baseRows() {
+        return List.of(item("a", 1, "Milk"), item("b", 1, "Bread"), item("c", 1, "Eggs"));
+    }
+
+    @Test
+    void unchangedFileKeepsLocalRowsAndBumpsChangedVersions() {
+        var base = baseRows();
+        var mine = copy(base);
+        mine.get(1).setName("Rye bread");
+        mine.add(item("d", 0, "Butter"));
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), null);
+
+        assertEquals(List.of("Milk", "Rye bread", "Eggs", "Butter"), names(result.getItems()));
+        assertEquals(1, find(result.getItems(), "a").getVersion());
+        assertEquals(2, find(result.getItems(), "b").getVersion());
+        assertEquals(1, find(result.getItems(), "d").getVersion());
+        assertFalse(result.hasChangesFromFile());
+    }
+
+    @Test
+    void editsToDifferentRowsAreBothKept() {
+        var base = baseRows();
+        var mine = copy(base);
+        mine.get(0).setName("Oat milk");
+        var theirs = copy(base);
+        theirs.get(2).setName("Free range eggs");
+        theirs.get(2).setVersion(2);
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), theirs);
+
+        assertEquals(List.of("Oat milk", "Bread", "Free range eggs"), names(result.getItems()));
+        assertEquals(0, result.getConflicts());
+        assertEquals("Free range eggs", result.getUpdated("c").getName());
+        assertTrue(result.hasChangesFromFile());
+    }
+
+    @Test
+    void rowEditedOnBothSidesKeepsLocalEdit() {
+        var base = baseRows();
+        var mine = copy(base);
+        mine.get(1).setName("Rye bread");
+        var theirs = copy(base);
+        theirs.get(1).setName("White bread");
+        theirs.get(1).setVersion(2);
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), theirs);
+
+        assertEquals(List.of("Milk", "Rye bread", "Eggs"), names(result.getItems()));
+        assertEquals(1, result.getConflicts());
+        // Newer than either side, so it wins when merged next
+        assertEquals(3, find(result.getItems(), "b").getVersion());
+    }
+
+    @Test
+    void rowDeletedInFileIsDeletedUnlessEditedHere() {
+        var base = baseRows();
+        var mine = copy(base);
+        mine.get(2).setName("Brown eggs");
+        var theirs = new ArrayList<>(copy(base).subList(0, 1));
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), theirs);
+
+        assertEquals(List.of("Milk", "Brown eggs"), names(result.getItems()));
+        assertTrue(result.isDeleted("b"));
+        assertFalse(result.isDeleted("c"));
+    }
+
+    @Test
+    void rowDeletedHereStaysDeletedUnlessEditedInFile() {
+        var base = baseRows();
+        var mine = new ArrayList<>(copy(base).subList(0, 1));
+        var theirs = copy(base);
+        theirs.get(2).setName("Brown eggs");
+        theirs.get(2).setVersion(2);
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), theirs);
+
+        assertEquals(List.of("Milk", "Brown eggs"), names(result.getItems()));
+    }
+
+    @Test
+    void rowsAddedInFileFollowTheRowBeforeThem() {
+        var base = baseRows();
+        var mine = copy(base);
+        mine.add(0, item("x", 0, "Coffee"));
+        var theirs = copy(base);
+        theirs.add(2, item("y", 1, "Butter"));
+        theirs.add(3, item("z", 1, "Cheese"));
+
+        var result = ListMerge.merge(mine, ListMerge.Base.of(base), theirs);
+
+        assertEquals(List.of("Coffee", "Milk", "Bread", "Butter", "Cheese", "Eggs"), names(result.getItems()));
+    }
+
+    @Test
+    void legacyRowsGetSameIdentitiesForEveryReader() throws Exception {
+        var file = writeLegacyFile();
+
+        var first = JsonListFormat.read(file);
+        var second = JsonListFormat.read(file);
+
+        assertEquals(first.size(), second.size());
+        for (var i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getId(), second.get(i).getId());
+        }
+        // Rows with the same contents still get different identities
+        assertFalse(first.get(0).getId().equals(first.get(3).getId()));
+    }
+
+    @Test
+    void legacyFileSavedByTwoReadersIsMergedWithoutDuplicates() throws Exception {
+        var file = writeLegacyFile();
+        var stamp = file.lastModified();
+        var size = file.length();
+
+        var mine = JsonListFormat.read(file);
+        var mineBase = ListMerge.Base.of(mine);
+        var theirs = JsonListFormat.read(file);
+        var theirBase = ListMerge.Base.of(theirs);
+
+        theirs.get(1).setName("Rye bread");
+        theirs.add(item(null, 0, "Butter"));
+        ListMerge.save(file, theirs, "", theirBase, stamp, size);
+
+        mine.get(2).setAmount(12);
+        // Make sure the file looks changed even on file systems with coarse timestamps
+        var result = ListMerge.save(file, mine, "", mineBase, stamp, size + 1);
+
+        assertEquals(0, result.getConflicts());
+        var saved = JsonListFormat.read(file);
+        assertEquals(List.of("Milk", "Rye bread", "Eggs", "Milk", "Butter"), names(saved));
+        assertEquals(Integer.valueOf(12), saved.get(2).getAmount());
+        assertNull(saved.get(0).getAmount());
+    }
+
+    @Test
+    void saveWithoutBaseReplacesFile() throws Exception {
+        var file = writeLegacyFile();
+
+        var result = ListMerge.save(file, List.of(item("a", 0, "Tea")), "", ListMerge.Base.EMPTY, 0, 0);
+
+        assertEquals(List.of("Tea"), names(result.getItems()));
+        assertEquals(List.of("Tea"), names(JsonListFormat.read(file)));
+    }
+
+    private File writeLegacyFile() throws IOException {
+        var file = dir.resolve("legacy.json");
+        Files.writeString(file, "[{\"name\":\"Milk\",\"amount\":null,\"price\":null},"
+            + "{\"name\":\"Bread\",\"amount\":1,\"price\":" + new BigDecimal("2.5") + "},"
+            + "{\"name\":\"Eggs\",\"amount\":6,\"price\":null},"
+            + "{\"name\":\"Milk\",\"amount\":null,\"price\":null}]", StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+}
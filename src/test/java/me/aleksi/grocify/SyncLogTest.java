@@ -0,0 +1,187 @@
+package me.aleksi.grocify;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import me.aleksi.jayson.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SyncLogTest {
+    @TempDir
+    Path dir;
+
+    private static GroceryListItem item(String id, String name) {
+        return new GroceryListItem(id, 1, name, null, null);
+    }
+
+    private static SyncLog log(ObservableList<GroceryListItem> items, String origin) {
+        return new SyncLog(items, modify -> modify.accept(items), origin);
+    }
+
+    private static List<String> names(List<GroceryListItem> items) {
+        return items.stream().map(GroceryListItem::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Send changes the way {@link SyncService} does, through JSON text.
+     */
+    private static JSONObject changes(SyncLog log, String epoch, long since, String origin) throws Exception {
+        return JsonListFormat.newReader().parse(log.changesSince(epoch, since, origin).toJSONString()).getObject();
+    }
+
+    private static List<GroceryListItem> rows(JSONObject changes) throws Exception {
+        var rows = new ArrayList<GroceryListItem>();
+        for (var row : changes.get("rows").getArray()) {
+            rows.add(JsonListFormat.toItem(row.getObject()));
+        }
+        return rows;
+    }
+
+    private static void sync(SyncLog from, SyncLog to, String toOrigin) throws Exception {
+        to.receive(changes(from, from.getEpoch(), 0, toOrigin));
+    }
+
+    @Test
+    void localChangesAreSentOnce() throws Exception {
+        var items = FXCollections.<GroceryListItem>observableArrayList();
+        var log = log(items, "a");
+
+        items.add(item("1", "Milk"));
+        var changes = changes(log, log.getEpoch(), 0, "b");
+
+        assertEquals(List.of("Milk"), names(rows(changes)));
+        var seq = changes.get("seq").getNumber().longValue();
+        assertEquals(0, rows(changes(log, log.getEpoch(), seq, "b")).size());
+    }
+
+    @Test
+    void changesOfAskingInstanceAreLeftOut() throws Exception {
+        var items = FXCollections.<GroceryListItem>observableArrayList();
+        var log = log(items, "a");
+
+        items.add(item("1", "Milk"));
+
+        assertEquals(0, rows(changes(log, log.getEpoch(), 0, "a")).size());
+    }
+
+    @Test
+    void unknownEpochSendsEverything() throws Exception {
+        var items = FXCollections.<GroceryListItem>observableArrayList();
+        var log = log(items, "a");
+
+        items.add(item("1", "Milk"));
+        items.add(item("2", "Bread"));
+
+        assertEquals(2, rows(changes(log, "old", 100, "b")).size());
+    }
+
+    @Test
+    void receivedRowsAreInsertedAfterTheirPredecessor() throws Exception {
+        var mine = FXCollections.observableArrayList(item("1", "Milk"), item("2", "Eggs"));
+        var theirs = FXCollections.observableArrayList(item("1", "Milk"), item("2", "Eggs"));
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        theirs.add(1, item("3", "Bread"));
+        sync(theirLog, myLog, "a");
+
+        assertEquals(List.of("Milk", "Bread", "Eggs"), names(mine));
+    }
+
+    @Test
+    void deletionsAreApplied() throws Exception {
+        var mine = FXCollections.observableArrayList(item("1", "Milk"), item("2", "Eggs"));
+        var theirs = FXCollections.observableArrayList(item("1", "Milk"), item("2", "Eggs"));
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        theirs.remove(0);
+        sync(theirLog, myLog, "a");
+
+        assertEquals(List.of("Eggs"), names(mine));
+    }
+
+    @Test
+    void receivedChangesAreNotSentBack() throws Exception {
+        var mine = FXCollections.<GroceryListItem>observableArrayList();
+        var theirs = FXCollections.<GroceryListItem>observableArrayList();
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        theirs.add(item("1", "Milk"));
+        sync(theirLog, myLog, "a");
+
+        assertEquals(0, rows(changes(myLog, myLog.getEpoch(), 0, "b")).size());
+    }
+
+    @Test
+    void laterChangeWins() throws Exception {
+        var mine = FXCollections.observableArrayList(item("1", "Milk"));
+        var theirs = FXCollections.observableArrayList(item("1", "Milk"));
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        mine.set(0, item("1", "Oat milk"));
+        sync(myLog, theirLog, "b");
+        theirs.set(0, item("1", "Skim milk"));
+        sync(theirLog, myLog, "a");
+
+        assertEquals(List.of("Skim milk"), names(mine));
+        assertEquals(List.of("Skim milk"), names(theirs));
+    }
+
+    @Test
+    void concurrentChangesEndUpTheSameEverywhere() throws Exception {
+        var mine = FXCollections.observableArrayList(item("1", "Milk"));
+        var theirs = FXCollections.observableArrayList(item("1", "Milk"));
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        mine.set(0, item("1", "Oat milk"));
+        theirs.set(0, item("1", "Skim milk"));
+        var toMe = changes(theirLog, theirLog.getEpoch(), 0, "a");
+        var toThem = changes(myLog, myLog.getEpoch(), 0, "b");
+        myLog.receive(toMe);
+        theirLog.receive(toThem);
+
+        // Same clock, so the greater origin wins
+        assertEquals(List.of("Skim milk"), names(mine));
+        assertEquals(List.of("Skim milk"), names(theirs));
+    }
+
+    @Test
+    void editsOfLegacyFileArriveAsUpdates() throws Exception {
+        var file = writeLegacyFile();
+        var mine = FXCollections.observableArrayList(JsonListFormat.read(file));
+        var theirs = FXCollections.observableArrayList(JsonListFormat.read(file));
+        var myLog = log(mine, "a");
+        var theirLog = log(theirs, "b");
+
+        var edited = theirs.get(1).copy();
+        edited.setName("Rye bread");
+        theirs.set(1, edited);
+        sync(theirLog, myLog, "a");
+
+        assertEquals(List.of("Milk", "Rye bread", "Milk"), names(mine));
+        assertEquals(theirs.get(1).getId(), mine.get(1).getId());
+    }
+
+    private File writeLegacyFile() throws IOException {
+        var file = dir.resolve("legacy.json");
+        Files.writeString(file, "[{\"name\":\"Milk\",\"amount\":null,\"price\":null},"
+            + "{\"name\":\"Bread\",\"amount\":null,\"price\":null},"
+            + "{\"name\":\"Milk\",\"amount\":null,\"price\":null}]", StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+}